@@ -15,7 +15,6 @@
  */
 package com.kenzan.bowtie;
 
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 
 import org.slf4j.Logger;
@@ -23,7 +22,11 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.kenzan.bowtie.annotation.Encoding;
+import com.kenzan.bowtie.annotation.ExecutionMode;
+import com.kenzan.bowtie.http.HttpTransport;
 import com.kenzan.bowtie.http.JerseyInvocationHandler;
+import com.kenzan.bowtie.http.NettyHttpTransport;
+import com.kenzan.bowtie.http.RestClientTransport;
 import com.kenzan.bowtie.log.LoggerFilter;
 import com.netflix.client.ClientFactory;
 import com.netflix.niws.client.http.RestClient;
@@ -97,8 +100,21 @@ public class RestAdapter {
                     new GZIPContentEncodingFilter());
         }
 
-        InvocationHandler invocationHandler = new JerseyInvocationHandler(
-                restClient, this.restAdapterConfig);
+        final HttpTransport transport;
+        if (this.restAdapterConfig.getExecutionMode() == ExecutionMode.nonBlocking) {
+            LOGGER.info("Using non-blocking transport");
+            transport = NettyHttpTransport.create(restClient.getLoadBalancer(),
+                    ClientFactory.getNamedConfig(namedClient),
+                    restClient.getJerseyClient().getMessageBodyWorkers(),
+                    this.restAdapterConfig.getEncoding() == Encoding.gzip,
+                    this.restAdapterConfig.getMaxResponseBytes());
+        } else {
+            transport = new RestClientTransport(restClient);
+        }
+
+        JerseyInvocationHandler invocationHandler = new JerseyInvocationHandler(
+                restClient, transport, this.restAdapterConfig);
+        invocationHandler.warmUp(clientClass);
         Object proxyInstance = Proxy.newProxyInstance(
                 ClassLoader.getSystemClassLoader(),
                 new Class<?>[] { clientClass }, invocationHandler);
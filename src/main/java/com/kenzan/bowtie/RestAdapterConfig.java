@@ -15,10 +15,23 @@
  */
 package com.kenzan.bowtie;
 
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import com.kenzan.bowtie.annotation.Encoding;
+import com.kenzan.bowtie.annotation.ExecutionMode;
+import com.kenzan.bowtie.cache.CacheKeyStrategy;
+import com.kenzan.bowtie.cache.HashedCacheKeyStrategy;
 import com.kenzan.bowtie.cache.RestCache;
 import com.kenzan.bowtie.serializer.JacksonMessageSerializer;
 import com.kenzan.bowtie.serializer.MessageSerializer;
+import com.kenzan.bowtie.serializer.NegotiatingMessageSerializer;
 
 /***
  * <p>
@@ -27,9 +40,23 @@ import com.kenzan.bowtie.serializer.MessageSerializer;
  */
 public class RestAdapterConfig {
 
+    public static final int DEFAULT_MAX_CACHEABLE_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_RESPONSE_BYTES = 16 * 1024 * 1024;
+    public static final int DEFAULT_CACHE_COMPRESSION_THRESHOLD = 2048;
+    private static final int REFRESH_QUEUE_SIZE = 100;
+
     private MessageSerializer messageSerializer;
     private Encoding encoding;
     private RestCache restCache;
+    private ExecutionMode executionMode;
+    private Executor completionExecutor;
+    private int maxCacheableBytes;
+    private int maxResponseBytes;
+    private int cacheCompressionThreshold;
+    private Executor refreshExecutor;
+    private double refreshAhead;
+    private CacheKeyStrategy cacheKeyStrategy;
+    private String clientName;
 
     private RestAdapterConfig() {
 
@@ -47,6 +74,42 @@ public class RestAdapterConfig {
         return this.restCache;
     }
 
+    public ExecutionMode getExecutionMode() {
+        return this.executionMode;
+    }
+
+    public Executor getCompletionExecutor() {
+        return this.completionExecutor;
+    }
+
+    public int getMaxCacheableBytes() {
+        return this.maxCacheableBytes;
+    }
+
+    public int getMaxResponseBytes() {
+        return this.maxResponseBytes;
+    }
+
+    public int getCacheCompressionThreshold() {
+        return this.cacheCompressionThreshold;
+    }
+
+    public Executor getRefreshExecutor() {
+        return this.refreshExecutor == null ? RefreshExecutorHolder.EXECUTOR : this.refreshExecutor;
+    }
+
+    public double getRefreshAhead() {
+        return this.refreshAhead;
+    }
+
+    public CacheKeyStrategy getCacheKeyStrategy() {
+        return this.cacheKeyStrategy;
+    }
+
+    public String getClientName() {
+        return this.clientName;
+    }
+
     public static RestAdapterConfig createDefault(){
         return new Builder()
         .withMessageSerializer(new JacksonMessageSerializer())
@@ -62,6 +125,15 @@ public class RestAdapterConfig {
         private MessageSerializer messageSerializer;
         private Encoding encoding;
         private RestCache restCache;
+        private ExecutionMode executionMode = ExecutionMode.blocking;
+        private Executor completionExecutor = ForkJoinPool.commonPool();
+        private int maxCacheableBytes = DEFAULT_MAX_CACHEABLE_BYTES;
+        private int maxResponseBytes = DEFAULT_MAX_RESPONSE_BYTES;
+        private int cacheCompressionThreshold = DEFAULT_CACHE_COMPRESSION_THRESHOLD;
+        private Executor refreshExecutor;
+        private double refreshAhead;
+        private CacheKeyStrategy cacheKeyStrategy = new HashedCacheKeyStrategy();
+        private String clientName;
 
         private Builder() {
 
@@ -72,6 +144,18 @@ public class RestAdapterConfig {
             return this;
         }
 
+        /***
+         * Negotiates the data format with the server using the given serializers, in order of preference,
+         * e.g. Smile then JSON.  Replaces the message serializer with a {@link NegotiatingMessageSerializer}.
+         *
+         * @param serializers the serializers, each with a content type
+         * @return the builder
+         */
+        public Builder withSerializerPreference(MessageSerializer... serializers) {
+            this.messageSerializer = new NegotiatingMessageSerializer(Arrays.asList(serializers));
+            return this;
+        }
+
         public Builder withEncoding(Encoding encoding) {
             this.encoding = encoding;
             return this;
@@ -82,14 +166,145 @@ public class RestAdapterConfig {
             return this;
         }
 
+        public Builder withExecutionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        /***
+         * Sets the {@link Executor} used to complete the futures returned by CompletableFuture and
+         * Future client methods.  Defaults to {@link ForkJoinPool#commonPool()}.
+         *
+         * @param completionExecutor the executor
+         * @return the builder
+         */
+        public Builder withCompletionExecutor(Executor completionExecutor) {
+            this.completionExecutor = completionExecutor;
+            return this;
+        }
+
+        /***
+         * Sets the largest response body, in bytes, that is stored in the {@link RestCache}.  Larger
+         * responses are deserialized straight from the network and not cached.  Defaults to 1 MiB.
+         *
+         * @param maxCacheableBytes the size limit
+         * @return the builder
+         */
+        public Builder withMaxCacheableBytes(int maxCacheableBytes) {
+            this.maxCacheableBytes = maxCacheableBytes;
+            return this;
+        }
+
+        /***
+         * Sets the largest response body, in bytes, that the {@link ExecutionMode#nonBlocking} transport
+         * aggregates in memory.  Larger responses fail the request.  Defaults to 16 MiB.
+         *
+         * @param maxResponseBytes the size limit
+         * @return the builder
+         */
+        public Builder withMaxResponseBytes(int maxResponseBytes) {
+            this.maxResponseBytes = maxResponseBytes;
+            return this;
+        }
+
+        /***
+         * Sets the size, in bytes, from which response bodies are compressed in the {@link RestCache}.  Bodies
+         * are compressed with Deflate at its fastest level, and only kept compressed if that makes them
+         * smaller.  Defaults to 2 KiB, 0 disables compression.
+         *
+         * @param cacheCompressionThreshold the size threshold
+         * @return the builder
+         */
+        public Builder withCacheCompressionThreshold(int cacheCompressionThreshold) {
+            this.cacheCompressionThreshold = cacheCompressionThreshold;
+            return this;
+        }
+
+        /***
+         * Sets the {@link Executor} used to refresh cached responses in the background, for
+         * stale-while-revalidate and refresh ahead.  Defaults to two daemon threads with a bounded queue, shared
+         * by all the clients and started on the first refresh.  Refreshes that do not fit are skipped.
+         *
+         * @param refreshExecutor the executor
+         * @return the builder
+         */
+        public Builder withRefreshExecutor(Executor refreshExecutor) {
+            this.refreshExecutor = refreshExecutor;
+            return this;
+        }
+
+        /***
+         * Refreshes a cached response in the background when it is requested after the given fraction of
+         * its TTL, e.g. 0.8, so that hot keys do not expire.  Disabled by default.
+         *
+         * @param refreshAhead the fraction of the TTL, between 0 and 1, or 0 to disable
+         * @return the builder
+         */
+        public Builder withRefreshAhead(double refreshAhead) {
+            this.refreshAhead = refreshAhead;
+            return this;
+        }
+
+        /***
+         * Sets the {@link CacheKeyStrategy} that renders the keys responses are cached under.  Defaults to
+         * {@link HashedCacheKeyStrategy}.
+         *
+         * @param cacheKeyStrategy the strategy
+         * @return the builder
+         */
+        public Builder withCacheKeyStrategy(CacheKeyStrategy cacheKeyStrategy) {
+            this.cacheKeyStrategy = cacheKeyStrategy;
+            return this;
+        }
+
+        /***
+         * Names the client in the keys of the Hystrix collapsers of its {@link com.kenzan.bowtie.annotation.Collapse
+         * collapsed} methods, so that clients of the same interface can be configured apart.  The keys are
+         * [clientName.]interface.method, with a .nonBlocking suffix in the nonBlocking execution mode, e.g.
+         * hystrix.collapser.users.com.example.UserClient.getUser.timerDelayInMilliseconds.  Unset by default.
+         *
+         * @param clientName the name
+         * @return the builder
+         */
+        public Builder withClientName(String clientName) {
+            this.clientName = clientName;
+            return this;
+        }
+
         public RestAdapterConfig build() {
             final RestAdapterConfig restAdapterConfig = new RestAdapterConfig();
 
             restAdapterConfig.messageSerializer = messageSerializer;
             restAdapterConfig.encoding = encoding;
             restAdapterConfig.restCache = restCache;
+            restAdapterConfig.executionMode = executionMode;
+            restAdapterConfig.completionExecutor = completionExecutor;
+            restAdapterConfig.maxCacheableBytes = maxCacheableBytes;
+            restAdapterConfig.maxResponseBytes = maxResponseBytes;
+            restAdapterConfig.cacheCompressionThreshold = cacheCompressionThreshold;
+            restAdapterConfig.refreshExecutor = refreshExecutor;
+            restAdapterConfig.refreshAhead = refreshAhead;
+            restAdapterConfig.cacheKeyStrategy = cacheKeyStrategy;
+            restAdapterConfig.clientName = clientName;
 
             return restAdapterConfig;
         }
+
+    }
+
+    /***
+     * Holds the default refresh executor, created when first used
+     */
+    private static class RefreshExecutorHolder {
+
+        private static final Executor EXECUTOR = newRefreshExecutor();
+
+        private static Executor newRefreshExecutor() {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE),
+                    new ThreadFactoryBuilder().setNameFormat("bowtie-refresh-%d").setDaemon(true).build());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
     }
 }
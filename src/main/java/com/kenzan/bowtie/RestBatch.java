@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import rx.Observable;
+
+import com.google.common.base.Defaults;
+import com.google.common.base.Preconditions;
+import com.kenzan.bowtie.http.JerseyInvocationHandler;
+import com.netflix.ribbon.proxy.annotation.Http;
+
+/***
+ * <p>
+ * Batch of calls of a client created by the {@link RestAdapter}, for pages that fan out to many cacheable calls.
+ * Executing the batch gets the cached responses of all of the calls with a single
+ * {@link com.kenzan.bowtie.cache.RestCache#getAll(java.util.Collection) RestCache.getAll}, e.g. one Memcache
+ * bulk get instead of a round trip per call, then dispatches every call at once so the misses are sent in
+ * parallel.
+ * </p>
+ *
+ * <pre>
+ * final RestBatch&lt;FakeClient&gt; batch = RestBatch.of(fakeClient);
+ * final CompletableFuture&lt;FakeUser&gt; jdoe = batch.add(client -&gt; client.getCachedUser(&quot;jdoe&quot;));
+ * final CompletableFuture&lt;FakeUser&gt; bdoe = batch.add(client -&gt; client.getCachedUser(&quot;bdoe&quot;));
+ * batch.execute();
+ * </pre>
+ *
+ * <p>
+ * Batched methods must return the response object, not an Observable or a Future.  A batch is not thread safe
+ * and is executed once.
+ * </p>
+ *
+ * @param <T> the client interface
+ */
+public class RestBatch<T> {
+
+    private final JerseyInvocationHandler invocationHandler;
+    private final T recorder;
+    private final List<Method> methods = new ArrayList<>();
+    private final List<Object[]> args = new ArrayList<>();
+    private final List<CompletableFuture<Object>> futures = new ArrayList<>();
+    private boolean executed;
+
+    private Method recordedMethod;
+    private Object[] recordedArgs;
+
+    @SuppressWarnings("unchecked")
+    private RestBatch(Class<?>[] interfaces, JerseyInvocationHandler invocationHandler) {
+        this.invocationHandler = invocationHandler;
+        this.recorder = (T) Proxy.newProxyInstance(interfaces[0].getClassLoader(), interfaces, this::record);
+    }
+
+    /***
+     * @param client a client created by the {@link RestAdapter}
+     * @param <T> the client interface
+     * @return a new batch of calls of the client
+     */
+    public static <T> RestBatch<T> of(T client) {
+
+        Preconditions.checkArgument(client != null && Proxy.isProxyClass(client.getClass()),
+                "Not a client created by the RestAdapter");
+        final InvocationHandler invocationHandler = Proxy.getInvocationHandler(client);
+        Preconditions.checkArgument(invocationHandler instanceof JerseyInvocationHandler,
+                "Not a client created by the RestAdapter");
+
+        return new RestBatch<>(client.getClass().getInterfaces(), (JerseyInvocationHandler) invocationHandler);
+    }
+
+    /***
+     * Adds a call to the batch.  The function is called with a stand-in for the client, which records the
+     * method called and its arguments.
+     *
+     * @param call calls a single Http method of the client
+     * @param <R> the response type
+     * @return a future completed with the response once the batch is executed
+     */
+    @SuppressWarnings("unchecked")
+    public <R> CompletableFuture<R> add(Function<T, R> call) {
+
+        Preconditions.checkState(!executed, "Batch already executed");
+        recordedMethod = null;
+        call.apply(recorder);
+        Preconditions.checkArgument(recordedMethod != null, "The call must call a method of the client");
+
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        methods.add(recordedMethod);
+        args.add(recordedArgs);
+        futures.add(future);
+        return (CompletableFuture<R>) future;
+    }
+
+    /***
+     * Executes the calls of the batch.  Returns once they are dispatched, the futures complete as the
+     * responses arrive.
+     */
+    public void execute() {
+
+        Preconditions.checkState(!executed, "Batch already executed");
+        executed = true;
+
+        final List<CompletableFuture<Object>> results = invocationHandler.invokeAll(methods, args);
+        for (int i = 0; i < results.size(); i++) {
+            final CompletableFuture<Object> future = futures.get(i);
+            results.get(i).whenComplete((value, error) -> {
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(value);
+                }
+            });
+        }
+    }
+
+    private Object record(Object proxy, Method method, Object[] methodArgs) {
+
+        Preconditions.checkArgument(method.isAnnotationPresent(Http.class),
+                "Only Http methods can be batched: %s", method.getName());
+        Preconditions.checkArgument(recordedMethod == null, "The call must call a single method of the client");
+        Preconditions.checkArgument(!Observable.class.isAssignableFrom(method.getReturnType())
+                && !Future.class.isAssignableFrom(method.getReturnType()),
+                "Batched method %s must return the response object", method.getName());
+        recordedMethod = method;
+        recordedArgs = methodArgs;
+        return Defaults.defaultValue(method.getReturnType());
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/***
+ * <p>
+ * Runtime method annotation to collapse concurrent calls of a single-key method into one call of a
+ * bulk method on the same client, using a Hystrix request collapser.  Calls made within the window
+ * are batched, the bulk method is invoked once with the collection of keys and each element of its
+ * response is handed back to the caller whose key matches the element's key property.
+ * </p>
+ *
+ * <p>
+ * The annotated method must take exactly one parameter, the key.  The batch method must take exactly
+ * one parameter, the collection of keys, usually bound with {@link Query} as a repeated query
+ * parameter, and return an array, an Iterable or a Map keyed by the key.  Callers whose key has no
+ * matching element receive null.
+ * </p>
+ *
+ * <pre>
+ * &#064;Http(method = HttpMethod.GET, uri = "/user/{username}")
+ * &#064;HystrixGroup(groupKey = "UserGroup", commandKey = "getUser")
+ * &#064;Collapse(batchMethod = "getUsers", keyProperty = "name")
+ * public FakeUser getUser(&#064;Path("username") String name);
+ *
+ * &#064;Http(method = HttpMethod.GET, uri = "/users")
+ * &#064;HystrixGroup(groupKey = "UserGroup", commandKey = "getUsers")
+ * public FakeUser[] getUsers(&#064;Query("name") List&lt;String&gt; names);
+ * </pre>
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Collapse {
+
+    /***
+     * @return the name of the bulk method on the same client interface
+     */
+    public String batchMethod();
+
+    /***
+     * <p>
+     * Bean property, or field, of the batch response elements that holds the key.  Matched against the
+     * String value of each caller's key.  Not used when the batch method returns a Map.
+     * </p>
+     *
+     * @return the key property name
+     */
+    public String keyProperty() default "";
+
+    /***
+     * @return how long, in milliseconds, calls are collected before the batch is sent
+     */
+    public int windowMs() default 10;
+
+    /***
+     * @return the maximum number of keys sent in one batch
+     */
+    public int maxBatchSize() default Integer.MAX_VALUE;
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.annotation;
+
+
+/***
+ * <p>
+ * Specify how requests are executed.
+ * </p>
+ *
+ * <ul>
+ * <li>blocking: requests are executed by a Hystrix command on a Hystrix thread pool using the Ribbon RestClient.</li>
+ * <li>nonBlocking: requests are executed by a semaphore isolated Hystrix observable command using the non-blocking
+ * Ribbon transport.  No thread is held while a request is in flight.  Jersey client filters, such as the
+ * LoggerFilter, are not applied.</li>
+ * </ul>
+ */
+public enum ExecutionMode {
+
+    blocking,
+    nonBlocking;
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/***
+ * <p>
+ * Runtime annotation declaring that the response objects of a method, or instances of a response class,
+ * are never modified.  Cache hits of such responses return the object deserialized when the response was
+ * cached, the same instance to every caller, instead of deserializing the cached bytes again.
+ * </p>
+ *
+ * <p>
+ * Only in-memory caches such as GuavaRestCache and TieredRestCache keep the objects.  The bytes are
+ * still cached, for distributed caches.
+ * </p>
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ImmutableResponse {
+
+}
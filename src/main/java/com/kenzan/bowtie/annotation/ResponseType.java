@@ -25,13 +25,12 @@ import java.lang.annotation.Target;
 public @interface ResponseType {
     /***
      * <p>
-     * Used mainly for observables to specify the return type because the return
-     * type cannot be inferred due to type erasure. If specified for a
-     * non-observable method, it will be honored over the returnType of the
-     * method.
+     * Overrides the response class resolved from the method signature.  Not required: the response
+     * type, including generic types such as List&lt;FakeUser&gt;, is resolved from the generic return
+     * type, or from its type argument for Observable, CompletableFuture and Future methods.
      * </p>
      * 
-     * @return the response class for observables.
+     * @return the response class
      */
     public Class<?> responseClass() default Class.class;
 }
@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Map;
+
+/***
+ * <p>
+ * The caching directives of a request or response, parsed from its Cache-Control header in a single pass,
+ * without regular expressions or substrings.  Header names and directives are matched case insensitively.
+ * </p>
+ *
+ * <p>
+ * The freshness lifetime of a response is its max-age, else its s-maxage, else the time from its Date to its
+ * Expires header.  The client is the only consumer of the responses it caches, so max-age takes precedence
+ * over s-maxage.  The Age header is deducted from the lifetime to give the TTL.
+ * </p>
+ */
+public class CacheControl {
+
+    /***
+     * Value of the numeric directives and headers that are absent
+     */
+    public static final long ABSENT = -1;
+
+    private static final long MAX_SECONDS = Integer.MAX_VALUE;
+
+    private long maxAge = ABSENT;
+    private long sMaxAge = ABSENT;
+    private long staleWhileRevalidate = ABSENT;
+    private long staleIfError = ABSENT;
+    private boolean noStore;
+    private boolean noCache;
+    private boolean isPrivate;
+    private boolean isPublic;
+    private boolean mustRevalidate;
+    private boolean proxyRevalidate;
+    private long expires = ABSENT;
+    private long age = ABSENT;
+    private String eTag;
+    private String lastModified;
+
+    private CacheControl() {
+
+    }
+
+    /***
+     * Parses a Cache-Control header value
+     *
+     * @param value the header value, or null
+     * @return the directives
+     */
+    public static CacheControl parse(String value) {
+
+        final CacheControl cacheControl = new CacheControl();
+        if (value != null) {
+            cacheControl.parseDirectives(value);
+        }
+        return cacheControl;
+    }
+
+    /***
+     * Parses the Cache-Control, Expires, Date and Age headers of a response, and picks out its ETag and
+     * Last-Modified validators in the same pass
+     *
+     * @param headers the headers, or null
+     * @return the directives
+     */
+    public static CacheControl of(Map<String, Collection<String>> headers) {
+
+        final CacheControl cacheControl = new CacheControl();
+        if (headers == null) {
+            return cacheControl;
+        }
+
+        String expires = null;
+        String date = null;
+        for (Map.Entry<String, Collection<String>> header : headers.entrySet()) {
+            final String name = header.getKey();
+            if (name == null || header.getValue() == null || header.getValue().isEmpty()) {
+                continue;
+            }
+            if ("Cache-Control".equalsIgnoreCase(name)) {
+                for (String value : header.getValue()) {
+                    cacheControl.parseDirectives(value);
+                }
+            } else if ("Expires".equalsIgnoreCase(name)) {
+                expires = header.getValue().iterator().next();
+            } else if ("Date".equalsIgnoreCase(name)) {
+                date = header.getValue().iterator().next();
+            } else if ("Age".equalsIgnoreCase(name)) {
+                cacheControl.age = parseSeconds(header.getValue().iterator().next(), 0, true);
+            } else if ("ETag".equalsIgnoreCase(name)) {
+                cacheControl.eTag = header.getValue().iterator().next();
+            } else if ("Last-Modified".equalsIgnoreCase(name)) {
+                cacheControl.lastModified = header.getValue().iterator().next();
+            }
+        }
+
+        if (expires != null) {
+            // An invalid Expires, e.g. 0, means already expired
+            final long expiresAt = parseDate(expires);
+            final long dateAt = date == null ? ABSENT : parseDate(date);
+            final long now = dateAt == ABSENT ? System.currentTimeMillis() : dateAt;
+            cacheControl.expires = expiresAt == ABSENT ? 0 : Math.max(0, (expiresAt - now) / 1000);
+        }
+        return cacheControl;
+    }
+
+    private void parseDirectives(String value) {
+
+        final int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == ',' || c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+
+            final int nameStart = i;
+            while (i < length && (c = value.charAt(i)) != '=' && c != ',' && c != ' ' && c != '\t') {
+                i++;
+            }
+            final int nameLength = i - nameStart;
+            i = skipWhitespace(value, i);
+
+            long seconds = ABSENT;
+            if (i < length && value.charAt(i) == '=') {
+                i = skipWhitespace(value, i + 1);
+                final boolean quoted = i < length && value.charAt(i) == '"';
+                if (quoted) {
+                    i++;
+                }
+                seconds = parseSeconds(value, i, false);
+                // Skip the rest of the value, quoted values may contain commas
+                if (quoted) {
+                    while (i < length && value.charAt(i) != '"') {
+                        i++;
+                    }
+                    i++;
+                }
+                while (i < length && value.charAt(i) != ',') {
+                    i++;
+                }
+            }
+            directive(value, nameStart, nameLength, seconds);
+        }
+    }
+
+    private void directive(String value, int start, int length, long seconds) {
+
+        // Numeric directives without a valid number are treated as 0, i.e. stale
+        if (is(value, start, length, "max-age")) {
+            maxAge = Math.max(seconds, 0);
+        } else if (is(value, start, length, "s-maxage")) {
+            sMaxAge = Math.max(seconds, 0);
+        } else if (is(value, start, length, "stale-while-revalidate")) {
+            staleWhileRevalidate = Math.max(seconds, 0);
+        } else if (is(value, start, length, "stale-if-error")) {
+            staleIfError = Math.max(seconds, 0);
+        } else if (is(value, start, length, "no-store")) {
+            noStore = true;
+        } else if (is(value, start, length, "no-cache")) {
+            noCache = true;
+        } else if (is(value, start, length, "private")) {
+            isPrivate = true;
+        } else if (is(value, start, length, "public")) {
+            isPublic = true;
+        } else if (is(value, start, length, "must-revalidate")) {
+            mustRevalidate = true;
+        } else if (is(value, start, length, "proxy-revalidate")) {
+            proxyRevalidate = true;
+        }
+    }
+
+    private static boolean is(String value, int start, int length, String directive) {
+        return length == directive.length() && value.regionMatches(true, start, directive, 0, length);
+    }
+
+    private static int skipWhitespace(String value, int i) {
+        while (i < value.length() && (value.charAt(i) == ' ' || value.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /***
+     * @return the digits from the given index as a number of seconds, capped at 2^31 - 1, or
+     *     {@link #ABSENT} if there are none, or any trailing characters when whole is set
+     */
+    private static long parseSeconds(String value, int start, boolean whole) {
+
+        final String trimmed = whole ? value.trim() : value;
+        long seconds = 0;
+        int i = start;
+        while (i < trimmed.length() && trimmed.charAt(i) >= '0' && trimmed.charAt(i) <= '9') {
+            seconds = Math.min(seconds * 10 + (trimmed.charAt(i) - '0'), MAX_SECONDS);
+            i++;
+        }
+        if (i == start || (whole && i != trimmed.length())) {
+            return ABSENT;
+        }
+        return seconds;
+    }
+
+    private static long parseDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+                    .toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return ABSENT;
+        }
+    }
+
+    /***
+     * @return the max-age directive in seconds, or {@link #ABSENT}
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /***
+     * @return the s-maxage directive in seconds, or {@link #ABSENT}
+     */
+    public long getSMaxAge() {
+        return sMaxAge;
+    }
+
+    /***
+     * @return the stale-while-revalidate directive in seconds, or 0
+     */
+    public long getStaleWhileRevalidate() {
+        return Math.max(staleWhileRevalidate, 0);
+    }
+
+    /***
+     * @return the stale-if-error directive in seconds, or 0
+     */
+    public long getStaleIfError() {
+        return Math.max(staleIfError, 0);
+    }
+
+    public boolean isNoStore() {
+        return noStore;
+    }
+
+    public boolean isNoCache() {
+        return noCache;
+    }
+
+    public boolean isPrivate() {
+        return isPrivate;
+    }
+
+    public boolean isPublic() {
+        return isPublic;
+    }
+
+    public boolean isMustRevalidate() {
+        return mustRevalidate;
+    }
+
+    public boolean isProxyRevalidate() {
+        return proxyRevalidate;
+    }
+
+    /***
+     * @return the Age header in seconds, or {@link #ABSENT}
+     */
+    public long getAge() {
+        return age;
+    }
+
+    /***
+     * @return the ETag header, or null
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /***
+     * @return the Last-Modified header, or null
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /***
+     * @return the freshness lifetime in seconds:  the max-age, else the s-maxage, else the time from the Date
+     *     to the Expires header, or {@link #ABSENT} if the response has none of them
+     */
+    public long getFreshnessLifetime() {
+
+        if (maxAge != ABSENT) {
+            return maxAge;
+        }
+        if (sMaxAge != ABSENT) {
+            return sMaxAge;
+        }
+        return expires;
+    }
+
+    /***
+     * @return the number of seconds the response stays fresh once received:  its freshness lifetime less its
+     *     Age, or 0 if it has no freshness lifetime or is already stale
+     */
+    public long getTTL() {
+
+        final long lifetime = getFreshnessLifetime();
+        if (lifetime == ABSENT) {
+            return 0;
+        }
+        return Math.max(0, lifetime - Math.max(age, 0));
+    }
+
+    @Override
+    public String toString() {
+        return "CacheControl [maxAge=" + maxAge + ", sMaxAge=" + sMaxAge + ", staleWhileRevalidate="
+                + staleWhileRevalidate + ", staleIfError=" + staleIfError + ", noStore=" + noStore + ", noCache="
+                + noCache + ", isPrivate=" + isPrivate + ", isPublic=" + isPublic + ", mustRevalidate="
+                + mustRevalidate + ", proxyRevalidate=" + proxyRevalidate + ", expires=" + expires + ", age="
+                + age + ", eTag=" + eTag + ", lastModified=" + lastModified + "]";
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.util.List;
+
+import com.netflix.client.http.HttpRequest.Verb;
+
+/***
+ * <p>
+ * Renders the key a response is stored under in the {@link RestCache} from the parts of the request it is
+ * a response to.  The key should start with the CacheKeyGroup followed by ':', if the request has one, as
+ * caches may budget entries by group.
+ * </p>
+ */
+public interface CacheKeyStrategy {
+
+    /***
+     * Renders the cache key of a request
+     *
+     * @param group the CacheKeyGroup of the request, or null
+     * @param verb the verb of the request
+     * @param path the rendered path of the request
+     * @param query the query parameters of the request sorted by name, as name/value pairs
+     * @param headers the request headers the response varies on, as name/value pairs
+     * @return the cache key
+     */
+    public String getCacheKey(String group, Verb verb, CharSequence path, List<String[]> query,
+            List<String[]> headers);
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * <p>
+ * Compact, versioned binary format of {@link CachedResponse} for remote and persistent caches.  Encoding and
+ * decoding are hand written, without reflection or shared state, so they are thread safe.
+ * </p>
+ *
+ * <p>
+ * Format, version 1, integers are unsigned varints and longs zigzag varints:
+ * </p>
+ *
+ * <pre>
+ * version      byte
+ * flags        byte, 1 if the body is compressed
+ * status       int
+ * ttl, createdAt, staleWhileRevalidate, staleIfError   long
+ * eTag, lastModified   string:  0 for null, else the UTF-8 length + 1 and the bytes
+ * headers      int count, then for each:  int name, 0 followed by a string or the index + 1 in the table of
+ *              common names, then int count and the value strings
+ * body         int length and the stored bytes
+ * </pre>
+ *
+ * <p>
+ * Headers that are not needed to replay the response, such as hop-by-hop headers, Content-Length, Age and
+ * Set-Cookie, are dropped.  The table of common header names is part of the format, names can only be
+ * appended to it.
+ * </p>
+ */
+public final class CachedResponseCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int COMPRESSED = 1;
+
+    private static final String[] HEADER_NAMES = { "Cache-Control", "Content-Type", "Content-Encoding",
+            "Content-Language", "ETag", "Last-Modified", "Expires", "Date", "Vary", "Content-Disposition",
+            "Location", "Link", "Pragma", "Accept-Ranges", "Access-Control-Allow-Origin" };
+
+    private static final Map<String, Integer> HEADER_INDEXES = new HashMap<>();
+
+    private static final Set<String> DROPPED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        for (int i = 0; i < HEADER_NAMES.length; i++) {
+            HEADER_INDEXES.put(HEADER_NAMES[i], i);
+        }
+        DROPPED_HEADERS.addAll(Arrays.asList("Connection", "Keep-Alive", "Proxy-Authenticate",
+                "Proxy-Authorization", "TE", "Trailer", "Transfer-Encoding", "Upgrade", "Content-Length", "Age",
+                "Set-Cookie", "Set-Cookie2", "Server", "X-Powered-By"));
+    }
+
+    private CachedResponseCodec() {
+
+    }
+
+    /***
+     * Encodes a response
+     *
+     * @param response the response
+     * @return the encoded response, exactly as long as it needs to be
+     */
+    public static byte[] encode(CachedResponse response) {
+
+        final byte[] body = response.getStoredBytes() == null ? new byte[0] : response.getStoredBytes();
+        final Writer writer = new Writer(body.length + 256);
+
+        writer.writeByte(VERSION);
+        writer.writeByte(response.isCompressed() ? COMPRESSED : 0);
+        writer.writeInt(response.getStatus());
+        writer.writeLong(response.getTTL());
+        writer.writeLong(response.getCreatedAt());
+        writer.writeLong(response.getStaleWhileRevalidate());
+        writer.writeLong(response.getStaleIfError());
+        writer.writeString(response.getETag());
+        writer.writeString(response.getLastModified());
+
+        final Map<String, Collection<String>> headers = response.getHeaders();
+        final List<Map.Entry<String, Collection<String>>> replayed = new ArrayList<>();
+        if (headers != null) {
+            for (Map.Entry<String, Collection<String>> header : headers.entrySet()) {
+                if (header.getKey() != null && header.getValue() != null
+                        && !DROPPED_HEADERS.contains(header.getKey())) {
+                    replayed.add(header);
+                }
+            }
+        }
+        writer.writeInt(replayed.size());
+        for (Map.Entry<String, Collection<String>> header : replayed) {
+            final Integer index = HEADER_INDEXES.get(header.getKey());
+            if (index == null) {
+                writer.writeInt(0);
+                writer.writeString(header.getKey());
+            } else {
+                writer.writeInt(index + 1);
+            }
+            writer.writeInt(header.getValue().size());
+            for (String value : header.getValue()) {
+                writer.writeString(value);
+            }
+        }
+
+        writer.writeInt(body.length);
+        writer.writeBytes(body);
+        return writer.toByteArray();
+    }
+
+    /***
+     * Decodes a response
+     *
+     * @param bytes the encoded response
+     * @return the response
+     * @throws IllegalArgumentException if the response was encoded with another version, or is truncated
+     */
+    public static CachedResponse decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /***
+     * Decodes a response from the position of the buffer, which is advanced past it
+     *
+     * @param buffer the encoded response
+     * @return the response
+     * @throws IllegalArgumentException if the response was encoded with another version, is truncated, or has
+     *     counts or lengths past the end of the buffer
+     */
+    public static CachedResponse decode(ByteBuffer buffer) {
+
+        try {
+            final byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported CachedResponse version " + version);
+            }
+
+            final CachedResponse response = new CachedResponse();
+            response.setCompressed((buffer.get() & COMPRESSED) != 0);
+            response.setStatus(readInt(buffer));
+            response.setTtl(readLong(buffer));
+            response.setCreatedAt(readLong(buffer));
+            response.setStaleWhileRevalidate(readLong(buffer));
+            response.setStaleIfError(readLong(buffer));
+            response.setETag(readString(buffer));
+            response.setLastModified(readString(buffer));
+
+            // Every header takes at least two bytes, so counts past the end of the buffer are corrupt
+            final int headerCount = readLength(buffer, "header count");
+            final Map<String, Collection<String>> headers = new HashMap<>(headerCount * 2);
+            for (int i = 0; i < headerCount; i++) {
+                final int index = readInt(buffer);
+                final String name;
+                if (index == 0) {
+                    name = readString(buffer);
+                } else if (index <= HEADER_NAMES.length) {
+                    name = HEADER_NAMES[index - 1];
+                } else {
+                    throw new IllegalArgumentException("Unknown header name " + index);
+                }
+                final int valueCount = readLength(buffer, "header value count");
+                final List<String> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    values.add(readString(buffer));
+                }
+                headers.put(name, values);
+            }
+            response.setHeaders(headers);
+
+            final byte[] body = new byte[readLength(buffer, "body length")];
+            buffer.get(body);
+            response.setCachedBytes(body);
+            return response;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated CachedResponse", e);
+        }
+    }
+
+    private static int readInt(ByteBuffer buffer) {
+
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /***
+     * Reads a count, or length, which cannot be negative nor larger than the remaining bytes
+     */
+    private static int readLength(ByteBuffer buffer, String name) {
+
+        final int length = readInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid " + name + " " + length + ", "
+                    + buffer.remaining() + " bytes remaining");
+        }
+        return length;
+    }
+
+    private static long readLong(ByteBuffer buffer) {
+
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new IllegalArgumentException("Malformed varlong");
+    }
+
+    private static String readString(ByteBuffer buffer) {
+
+        // 0 encodes null, else the length plus one
+        final int encodedLength = readInt(buffer);
+        if (encodedLength == 0) {
+            return null;
+        }
+        if (encodedLength < 0 || encodedLength - 1 > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + (encodedLength - 1) + ", "
+                    + buffer.remaining() + " bytes remaining");
+        }
+        final int length = encodedLength - 1;
+        final String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /***
+     * Growable byte array, with the varint encodings of the format
+     */
+    private static class Writer {
+
+        private byte[] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeInt(0);
+                return;
+            }
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length + 1);
+            writeBytes(bytes);
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        }
+    }
+}
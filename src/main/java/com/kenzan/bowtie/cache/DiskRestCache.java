@@ -0,0 +1,571 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * <p>
+ * Persistent {@link RestCache} backed by append-only, memory-mapped segment files in a directory, so that a
+ * restarted service begins with the responses cached before it stopped.
+ * </p>
+ *
+ * <p>
+ * Each set appends a record, checked with a CRC32, to the active segment.  An in-memory index maps each key to
+ * the location and expiry of its latest record.  At startup the index is rebuilt in the background from the
+ * record headers of the existing segments, skipping expired and corrupt records, so that opening a large cache
+ * does not delay startup; responses are missing until their segment is indexed, see
+ * {@link #awaitLoaded(long, TimeUnit)}.  The responses themselves are only read, and deserialized, when they are
+ * requested.  Writes after a restart go to a new segment.
+ * </p>
+ *
+ * <p>
+ * Responses expire with their TTL and stale windows, responses without a max-age after expireAfterWriteSeconds.
+ * Segments whose records are mostly overwritten or expired are compacted in the background, and the oldest
+ * segments are dropped when the bytes written to the segments, plus room for the active one, grow past
+ * maximumBytes.
+ * </p>
+ *
+ * <pre>
+ * final DiskRestCache restCache = DiskRestCache.custom(new File("/var/cache/bowtie"))
+ *         .withMaximumBytes(1024L * 1024 * 1024)
+ *         .build();
+ * </pre>
+ */
+public class DiskRestCache implements RestCache, Closeable {
+
+    final static private Logger LOGGER = LoggerFactory.getLogger(DiskRestCache.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    /*** Record length and CRC32 */
+    private static final int RECORD_HEADER = 8;
+
+    /*** Expiry and key length, before the key */
+    private static final int ENTRY_HEADER = 10;
+
+    private static class Segment {
+
+        private final long id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private volatile int writePosition;
+        private volatile boolean dropped;
+
+        private Segment(long id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class Location {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int payloadOffset;
+        private final long expiresAt;
+
+        private Location(Segment segment, int offset, int length, int payloadOffset, long expiresAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.payloadOffset = payloadOffset;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maximumBytes;
+    private final long staleRetentionSeconds;
+    private final long expireAfterWriteMillis;
+    private final double compactionThreshold;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService compactor;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private Segment active;
+
+    private DiskRestCache(Builder builder) throws IOException {
+
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.maximumBytes = builder.maximumBytes;
+        this.staleRetentionSeconds = builder.staleRetentionSeconds;
+        this.expireAfterWriteMillis = TimeUnit.SECONDS.toMillis(builder.expireAfterWriteSeconds);
+        this.compactionThreshold = builder.compactionThreshold;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        long nextId = 0;
+        for (File file : segmentFiles()) {
+            final Segment segment = mapSegment(file, segmentId(file), file.length());
+            // Counted as full until indexed
+            segment.writePosition = segment.buffer.capacity();
+            segments.add(segment);
+            nextId = segment.id + 1;
+        }
+        this.active = newSegment(nextId);
+
+        // Compactions run after the segments are indexed, on the same thread
+        this.compactor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("bowtie-disk-cache-%d").setDaemon(true).build());
+        final List<Segment> existing = new ArrayList<>(segments);
+        this.compactor.execute(() -> load(existing));
+        this.compactor.scheduleWithFixedDelay(this::compact, builder.compactionIntervalSeconds,
+                builder.compactionIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public static Builder custom(File directory) {
+        return new Builder(directory);
+    }
+
+    @Override
+    public Optional<CachedResponse> get(String key) {
+        LOGGER.debug("Getting cache: {}", key);
+
+        final Location location = index.get(key);
+        if (location == null) {
+            return Optional.empty();
+        }
+        if (System.currentTimeMillis() >= location.expiresAt) {
+            remove(key, location);
+            return Optional.empty();
+        }
+
+        final ByteBuffer payload = location.segment.buffer.duplicate();
+        payload.position(location.payloadOffset);
+        payload.limit(location.offset + location.length);
+        try {
+            return Optional.of(CachedResponseCodec.decode(payload.slice()));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not read cached response {}", key, e);
+            remove(key, location);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void set(String key, CachedResponse value) {
+        LOGGER.debug("Setting cache: {}", key);
+
+        final long retention = value.getRetention(staleRetentionSeconds);
+        final long expiresAt = retention > 0
+                ? value.getCreatedAt() + TimeUnit.SECONDS.toMillis(retention)
+                : System.currentTimeMillis() + expireAfterWriteMillis;
+
+        append(key, expiresAt, CachedResponseCodec.encode(value));
+    }
+
+    /***
+     * Stops compacting and flushes the segments to disk
+     */
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        synchronized (this) {
+            segments.forEach(segment -> segment.buffer.force());
+            active.buffer.force();
+        }
+    }
+
+    /***
+     * Waits for the segments of earlier runs to be indexed
+     *
+     * @param timeout the longest time to wait
+     * @param unit the unit of the timeout
+     * @return true if the segments are indexed, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException {
+        return loaded.await(timeout, unit);
+    }
+
+    /***
+     * @return the number of responses in the index, including expired ones not yet dropped
+     */
+    public int size() {
+        return index.size();
+    }
+
+    private synchronized void append(String key, long expiresAt, byte[] payload) {
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int length = ENTRY_HEADER + keyBytes.length + payload.length;
+        if (keyBytes.length > Short.MAX_VALUE || RECORD_HEADER + length > segmentSize) {
+            LOGGER.debug("Not caching {}, {} bytes do not fit in a segment", key, length);
+            return;
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(length);
+        record.putLong(expiresAt).putShort((short) keyBytes.length).put(keyBytes).put(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, length);
+
+        try {
+            writeRecord(key, length, (int) crc.getValue(), record.array(), expiresAt, keyBytes.length);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write cached response {}", key, e);
+        }
+    }
+
+    private void writeRecord(String key, int length, int crc, byte[] record, long expiresAt, int keyLength)
+            throws IOException {
+
+        if (active.writePosition + RECORD_HEADER + length > segmentSize) {
+            segments.add(active);
+            active = newSegment(active.id + 1);
+            evict();
+        }
+
+        final Segment segment = active;
+        final int offset = segment.writePosition;
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + RECORD_HEADER);
+        buffer.put(record, 0, length);
+        buffer.putInt(offset + 4, crc);
+        // The length goes last, a record without one ends the segment
+        buffer.putInt(offset, length);
+        segment.writePosition = offset + RECORD_HEADER + length;
+
+        index(key, new Location(segment, offset + RECORD_HEADER, length,
+                offset + RECORD_HEADER + ENTRY_HEADER + keyLength, expiresAt));
+    }
+
+    private void index(String key, Location location) {
+
+        location.segment.liveBytes.addAndGet(RECORD_HEADER + location.length);
+        final Location previous = index.put(key, location);
+        if (previous != null) {
+            previous.segment.liveBytes.addAndGet(-(RECORD_HEADER + previous.length));
+        }
+    }
+
+    private void remove(String key, Location location) {
+
+        if (index.remove(key, location)) {
+            location.segment.liveBytes.addAndGet(-(RECORD_HEADER + location.length));
+        }
+    }
+
+    /***
+     * Indexes the segments written by earlier runs, oldest first
+     */
+    private void load(List<Segment> existing) {
+
+        try {
+            for (Segment segment : existing) {
+                if (!segment.dropped) {
+                    load(segment);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not load {}", directory, e);
+        } finally {
+            loaded.countDown();
+        }
+    }
+
+    /***
+     * Indexes the valid, unexpired records of a segment written by an earlier run.  Keys set, or compacted,
+     * since startup are in newer segments and are left alone.
+     */
+    private void load(Segment segment) {
+
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        final long now = System.currentTimeMillis();
+        final CRC32 crc = new CRC32();
+        int offset = 0;
+        int records = 0;
+
+        while (offset + RECORD_HEADER + ENTRY_HEADER <= buffer.capacity()) {
+            final int length = buffer.getInt(offset);
+            if (length < ENTRY_HEADER || offset + RECORD_HEADER + length > buffer.capacity()) {
+                break;
+            }
+
+            final byte[] record = new byte[length];
+            buffer.position(offset + RECORD_HEADER);
+            buffer.get(record);
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                LOGGER.warn("Corrupt record in {} at {}, ignoring the rest of the segment", segment.file, offset);
+                break;
+            }
+
+            final ByteBuffer entry = ByteBuffer.wrap(record);
+            final long expiresAt = entry.getLong();
+            final int keyLength = entry.getShort();
+            final String key = new String(record, ENTRY_HEADER, keyLength, StandardCharsets.UTF_8);
+            // An expired record supersedes the earlier records of the key too
+            final Location location = expiresAt > now ? new Location(segment, offset + RECORD_HEADER, length,
+                    offset + RECORD_HEADER + ENTRY_HEADER + keyLength, expiresAt) : null;
+            index.compute(key, (k, previous) -> {
+                if (segment.dropped || previous != null && previous.segment.id > segment.id) {
+                    return previous;
+                }
+                if (previous != null) {
+                    previous.segment.liveBytes.addAndGet(-(RECORD_HEADER + previous.length));
+                }
+                if (location != null) {
+                    segment.liveBytes.addAndGet(RECORD_HEADER + length);
+                }
+                return location;
+            });
+            if (location != null) {
+                records++;
+            }
+            offset += RECORD_HEADER + length;
+        }
+
+        segment.writePosition = offset;
+        LOGGER.info("Loaded {} cached responses from {}", records, segment.file);
+    }
+
+    /***
+     * Rewrites the live records of sealed segments that are mostly garbage into the active segment
+     */
+    private void compact() {
+
+        try {
+            final long now = System.currentTimeMillis();
+            index.forEach((key, location) -> {
+                if (now >= location.expiresAt) {
+                    remove(key, location);
+                }
+            });
+
+            for (Segment segment : segments) {
+                if (segment.writePosition > 0
+                        && segment.liveBytes.get() < segment.writePosition * compactionThreshold) {
+                    compact(segment);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not compact {}", directory, e);
+        }
+    }
+
+    private void compact(Segment segment) {
+
+        LOGGER.debug("Compacting {}", segment.file);
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            // Rewriting a record can evict the segment being compacted
+            if (segment.dropped) {
+                return;
+            }
+            final Location location = entry.getValue();
+            if (location.segment != segment) {
+                continue;
+            }
+
+            final byte[] record = new byte[location.length];
+            final ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(location.offset);
+            buffer.get(record);
+
+            synchronized (this) {
+                // Skip responses set again since they were read
+                if (index.get(entry.getKey()) != location) {
+                    continue;
+                }
+                try {
+                    writeRecord(entry.getKey(), location.length, segment.buffer.getInt(location.offset - 4),
+                            record, location.expiresAt, location.payloadOffset - location.offset - ENTRY_HEADER);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not compact {}", segment.file, e);
+                    return;
+                }
+            }
+        }
+        drop(segment);
+    }
+
+    /***
+     * Drops the oldest segments while the bytes written to the sealed segments, plus the size of the active
+     * one, exceed the maximum size
+     */
+    private void evict() {
+
+        long writtenBytes = 0;
+        for (Segment segment : segments) {
+            writtenBytes += segment.writePosition;
+        }
+        while (writtenBytes + segmentSize > maximumBytes && !segments.isEmpty()) {
+            final Segment oldest = segments.get(0);
+            writtenBytes -= oldest.writePosition;
+            drop(oldest);
+        }
+    }
+
+    /***
+     * Removes a segment and its index entries, unless it was already dropped
+     */
+    private synchronized void drop(Segment segment) {
+
+        if (!segments.remove(segment)) {
+            return;
+        }
+        segment.dropped = true;
+        index.forEach((key, location) -> {
+            if (location.segment == segment) {
+                remove(key, location);
+            }
+        });
+        // Mappings stay readable after the file is deleted, so concurrent reads are safe
+        if (!segment.file.delete()) {
+            LOGGER.warn("Could not delete {}", segment.file);
+        }
+    }
+
+    private Segment newSegment(long id) throws IOException {
+        return mapSegment(new File(directory, "segment-" + id + ".dat"), id, segmentSize);
+    }
+
+    private static Segment mapSegment(File file, long id, long size) throws IOException {
+
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             final FileChannel channel = randomAccessFile.getChannel()) {
+            return new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private List<File> segmentFiles() {
+
+        final File[] files = directory.listFiles((dir, name) -> SEGMENT_NAME.matcher(name).matches());
+        final List<File> segmentFiles = new ArrayList<>(Arrays.asList(files == null ? new File[0] : files));
+        segmentFiles.sort((a, b) -> Long.compare(segmentId(a), segmentId(b)));
+        return segmentFiles;
+    }
+
+    private static long segmentId(File file) {
+        final Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+        Preconditions.checkArgument(matcher.matches(), "Not a segment: %s", file);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    public static class Builder {
+
+        private final File directory;
+        private int segmentSize = 64 * 1024 * 1024;
+        private long maximumBytes = 1024L * 1024 * 1024;
+        private long staleRetentionSeconds;
+        private long expireAfterWriteSeconds = TimeUnit.MINUTES.toSeconds(10);
+        private long compactionIntervalSeconds = 60;
+        private double compactionThreshold = 0.5;
+
+        private Builder(File directory) {
+            this.directory = Preconditions.checkNotNull(directory, "directory required");
+        }
+
+        /***
+         * @param segmentSize the size of each segment file in bytes, and so the largest cacheable response,
+         *     defaults to 64 MiB
+         * @return the builder
+         */
+        public Builder withSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /***
+         * @param maximumBytes the bytes written to the segment files past which the oldest are dropped,
+         *     defaults to 1 GiB
+         * @return the builder
+         */
+        public Builder withMaximumBytes(long maximumBytes) {
+            this.maximumBytes = maximumBytes;
+            return this;
+        }
+
+        /***
+         * @param staleRetentionSeconds how long responses with an ETag or Last-Modified validator are kept
+         *     once stale, so that they can be revalidated, defaults to 0
+         * @return the builder
+         */
+        public Builder withStaleRetention(long staleRetentionSeconds) {
+            this.staleRetentionSeconds = staleRetentionSeconds;
+            return this;
+        }
+
+        /***
+         * @param expireAfterWriteSeconds how long responses without a max-age are kept, defaults to ten minutes
+         * @return the builder
+         */
+        public Builder withExpireAfterWrite(long expireAfterWriteSeconds) {
+            this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+            return this;
+        }
+
+        /***
+         * @param compactionIntervalSeconds the delay between compactions, defaults to 60
+         * @param compactionThreshold the fraction of live bytes under which a segment is compacted,
+         *     defaults to 0.5
+         * @return the builder
+         */
+        public Builder withCompaction(long compactionIntervalSeconds, double compactionThreshold) {
+            this.compactionIntervalSeconds = compactionIntervalSeconds;
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /***
+         * Opens the cache, indexing the segments already in the directory in the background
+         *
+         * @return the cache
+         * @throws IOException if the directory or a segment cannot be opened
+         */
+        public DiskRestCache build() throws IOException {
+            return new DiskRestCache(this);
+        }
+    }
+}
@@ -15,14 +15,20 @@
  */
 package com.kenzan.bowtie.cache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Preconditions;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
 import com.netflix.niws.client.http.CachedResponse;
 
 /***
@@ -31,12 +37,52 @@ import com.netflix.niws.client.http.CachedResponse;
  * to create a default cache.  The default cache ignores the HTTP cache headers and caches responses for ten minutes.
  * </p>
  *
+ * <p>
+ * Use GuavaRestCache.custom() to bound the cache by the approximate size of the responses in bytes, and to give
+ * {@link com.kenzan.bowtie.annotation.CacheKeyGroup CacheKeyGroups} budgets of their own, so that one group cannot
+ * evict another.  Caches built this way also drop responses once their max-age, and stale windows, have elapsed.
+ * </p>
+ *
+ * <pre>
+ * final GuavaRestCache cache = GuavaRestCache.custom()
+ *         .withMaximumWeight(64 * 1024 * 1024)
+ *         .withGroupMaximumWeight("userCache", 16 * 1024 * 1024)
+ *         .build();
+ * </pre>
+ *
  */
 public class GuavaRestCache  implements RestCache{
     
     final static private Logger LOGGER = LoggerFactory.getLogger(GuavaRestCache.class);
-    
+
+    /*** Approximate size of the fields and collections of a response, added to its body and header sizes */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    /***
+     * Weighs a cached response by the approximate number of bytes it takes
+     */
+    static final Weigher<String, CachedResponse> WEIGHER = new Weigher<String, CachedResponse>() {
+        @Override
+        public int weigh(String key, CachedResponse value) {
+            long weight = ENTRY_OVERHEAD + key.length();
+            weight += value.getStoredLength();
+            if (value.getHeaders() != null) {
+                for (Map.Entry<String, Collection<String>> header : value.getHeaders().entrySet()) {
+                    weight += header.getKey().length();
+                    for (String headerValue : header.getValue()) {
+                        weight += headerValue.length();
+                    }
+                }
+            }
+            return (int) Math.min(weight, Integer.MAX_VALUE);
+        }
+    };
+
     final Cache<String, CachedResponse> cache;
+    private final Map<String, Cache<String, CachedResponse>> groupCaches;
+    private final boolean valueCaching;
+    private final boolean honorTtl;
+    private final long staleRetentionSeconds;
 
     
     public static GuavaRestCache newDefaultCache() {
@@ -44,20 +90,176 @@ public class GuavaRestCache  implements RestCache{
             .expireAfterWrite(10, TimeUnit.MINUTES)
             .build());
     }
+
+    public static Builder custom() {
+        return new Builder();
+    }
     
     public GuavaRestCache(Cache<String, CachedResponse> cache) {
+        this(cache, false);
+    }
+
+    /***
+     * @param cache the Guava cache
+     * @param valueCaching true to keep the deserialized bodies of all responses, see {@link RestCache#isValueCaching()}
+     */
+    public GuavaRestCache(Cache<String, CachedResponse> cache, boolean valueCaching) {
         this.cache = cache;
+        this.groupCaches = new HashMap<>();
+        this.valueCaching = valueCaching;
+        this.honorTtl = false;
+        this.staleRetentionSeconds = 0;
+    }
+
+    private GuavaRestCache(Builder builder) {
+        this.cache = newCache(builder, builder.maximumWeight);
+        this.groupCaches = new HashMap<>();
+        builder.groupMaximumWeights.forEach((group, maximumWeight) ->
+                groupCaches.put(group, newCache(builder, maximumWeight)));
+        this.valueCaching = builder.valueCaching;
+        this.honorTtl = true;
+        this.staleRetentionSeconds = builder.staleRetentionSeconds;
+    }
+
+    private static Cache<String, CachedResponse> newCache(Builder builder, long maximumWeight) {
+        final CacheBuilder<String, CachedResponse> cacheBuilder = CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(builder.weigher)
+                .expireAfterWrite(builder.expireAfterWriteSeconds, TimeUnit.SECONDS);
+        return builder.removalListener == null ? cacheBuilder.build()
+                : cacheBuilder.removalListener(builder.removalListener).build();
     }
 
     @Override
     public Optional<CachedResponse> get(String key) {
         LOGGER.debug("Getting cache: {}", key);
-        return Optional.ofNullable(this.cache.getIfPresent(key));
+        final Cache<String, CachedResponse> cache = cacheFor(key);
+        final CachedResponse value = cache.getIfPresent(key);
+
+        // Guava has no per-entry expiry, responses past their retention are dropped when read
+        if (value != null && isExpired(value)) {
+            cache.invalidate(key);
+            return Optional.empty();
+        }
+        return Optional.ofNullable(value);
     }
 
     @Override
     public void set(String key, CachedResponse value) {
         LOGGER.debug("Setting cache: {}", key);
-        cache.put(key, value);
+        cacheFor(key).put(key, value);
+    }
+
+    @Override
+    public boolean isValueCaching() {
+        return valueCaching;
+    }
+
+    private boolean isExpired(CachedResponse value) {
+        final long retention = value.getRetention(staleRetentionSeconds);
+        return honorTtl && retention > 0 && value.getAge() >= TimeUnit.SECONDS.toMillis(retention);
+    }
+
+    /***
+     * @return the cache of the CacheKeyGroup of the key, the part before the first ':', if it has a budget
+     */
+    private Cache<String, CachedResponse> cacheFor(String key) {
+        if (groupCaches.isEmpty()) {
+            return cache;
+        }
+        final int separator = key.indexOf(':');
+        final Cache<String, CachedResponse> groupCache = separator < 0 ? null
+                : groupCaches.get(key.substring(0, separator));
+        return groupCache == null ? cache : groupCache;
+    }
+
+    public static class Builder {
+
+        private long maximumWeight = 64 * 1024 * 1024;
+        private final Map<String, Long> groupMaximumWeights = new HashMap<>();
+        private long expireAfterWriteSeconds = TimeUnit.MINUTES.toSeconds(10);
+        private long staleRetentionSeconds;
+        private boolean valueCaching;
+        private Weigher<String, CachedResponse> weigher = WEIGHER;
+        private RemovalListener<String, CachedResponse> removalListener;
+
+        private Builder() {
+
+        }
+
+        /***
+         * @param maximumWeight the size, in approximate bytes, of the responses of the CacheKeyGroups without a
+         *     budget of their own, defaults to 64 MiB
+         * @return the builder
+         */
+        public Builder withMaximumWeight(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /***
+         * Gives the CacheKeyGroup a budget of its own, separate from the other groups.
+         *
+         * @param group the CacheKeyGroup
+         * @param maximumWeight the size of the responses of the group, in approximate bytes
+         * @return the builder
+         */
+        public Builder withGroupMaximumWeight(String group, long maximumWeight) {
+            Preconditions.checkArgument(group.indexOf(':') < 0, "group must not contain ':'");
+            this.groupMaximumWeights.put(group, maximumWeight);
+            return this;
+        }
+
+        /***
+         * @param expireAfterWriteSeconds the longest time a response is cached, including responses without
+         *     a max-age, defaults to ten minutes
+         * @return the builder
+         */
+        public Builder withExpireAfterWrite(long expireAfterWriteSeconds) {
+            this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+            return this;
+        }
+
+        /***
+         * @param staleRetentionSeconds how long responses with an ETag or Last-Modified validator are kept
+         *     once stale, so that they can be revalidated, defaults to 0
+         * @return the builder
+         */
+        public Builder withStaleRetention(long staleRetentionSeconds) {
+            this.staleRetentionSeconds = staleRetentionSeconds;
+            return this;
+        }
+
+        /***
+         * @param valueCaching true to keep the deserialized bodies of all responses, see
+         *     {@link RestCache#isValueCaching()}
+         * @return the builder
+         */
+        public Builder withValueCaching(boolean valueCaching) {
+            this.valueCaching = valueCaching;
+            return this;
+        }
+
+        /***
+         * @param weigher weighs the responses instead of {@link GuavaRestCache#WEIGHER}
+         * @return the builder
+         */
+        Builder withWeigher(Weigher<String, CachedResponse> weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        /***
+         * @param removalListener notified of the responses evicted, expired or replaced
+         * @return the builder
+         */
+        Builder withRemovalListener(RemovalListener<String, CachedResponse> removalListener) {
+            this.removalListener = removalListener;
+            return this;
+        }
+
+        public GuavaRestCache build() {
+            return new GuavaRestCache(this);
+        }
     }
 }
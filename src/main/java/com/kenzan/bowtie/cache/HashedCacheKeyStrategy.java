@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.netflix.client.http.HttpRequest.Verb;
+
+/***
+ * <p>
+ * Default {@link CacheKeyStrategy}, renders fixed width keys:  <CacheKeyGroup>:<Hash>, where the hash is the
+ * 128 bit murmur3 hash of the verb, path, query and headers, in URL safe Base64.  The parts are hashed as
+ * they are, without building the raw key, which is only rendered, with {@link RawCacheKeyStrategy}, when
+ * debug logging is enabled.
+ * </p>
+ */
+public class HashedCacheKeyStrategy implements CacheKeyStrategy {
+
+    final static private Logger LOGGER = LoggerFactory.getLogger(HashedCacheKeyStrategy.class);
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+    private final CacheKeyStrategy rawStrategy = new RawCacheKeyStrategy();
+
+    @Override
+    public String getCacheKey(String group, Verb verb, CharSequence path, List<String[]> query,
+            List<String[]> headers) {
+
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+        hasher.putInt(verb.ordinal());
+        putString(hasher, path);
+        hasher.putInt(query.size());
+        for (String[] param : query) {
+            putString(hasher, param[0]);
+            putString(hasher, param[1]);
+        }
+        hasher.putInt(headers.size());
+        for (String[] header : headers) {
+            putString(hasher, header[0]);
+            putString(hasher, header[1]);
+        }
+
+        final String hash = ENCODING.encode(hasher.hash().asBytes());
+        final String key = group == null ? hash : group + ":" + hash;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Cache key {} for {} {}", key, verb,
+                    rawStrategy.getCacheKey(group, verb, path, query, headers));
+        }
+        return key;
+    }
+
+    /***
+     * Length prefixed, so that adjacent parts cannot run into each other
+     */
+    private static void putString(Hasher hasher, CharSequence value) {
+        hasher.putInt(value.length());
+        hasher.putString(value, StandardCharsets.UTF_8);
+    }
+}
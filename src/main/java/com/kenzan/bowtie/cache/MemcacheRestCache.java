@@ -15,9 +15,11 @@
  */
 package com.kenzan.bowtie.cache;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 import net.spy.memcached.CachedData;
@@ -25,9 +27,6 @@ import net.spy.memcached.CachedData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
 import com.netflix.evcache.EVCache;
 import com.netflix.evcache.EVCacheException;
 import com.netflix.evcache.EVCacheTranscoder;
@@ -35,7 +34,14 @@ import com.netflix.niws.client.http.CachedResponse;
 
 /***
  * <p>
- * {@link RestCache} implemented using Memcache.  Uses Kyro for serialization.  Honors the TTL of the value.  
+ * {@link RestCache} implemented using Memcache.  Uses {@link CachedResponseCodec} for serialization.  Honors
+ * the TTL of the value.
+ * </p> 
+ * 
+ * <p>
+ * Responses are kept past their TTL for their stale-while-revalidate or stale-if-error window.  Responses
+ * with an ETag or Last-Modified validator can be kept for a further staleRetentionSeconds, so that they
+ * can be revalidated with a conditional request once stale.  Not kept by default.
  * </p> 
  * 
  * 
@@ -57,17 +63,14 @@ public class MemcacheRestCache  implements RestCache{
         
     }
     
+    /***
+     * Encodes responses with {@link CachedResponseCodec}.  Values written with another flag, e.g. by older
+     * versions, or another version of the format are treated as misses.
+     */
     private static class CachedDataResponseEVCacheTranscoder implements EVCacheTranscoder<CachedResponse>{
         
-        private static final int CACHED_DATA_OBJECT_FLAG = 800;
-        private Kryo kryo;
+        private static final int CACHED_DATA_OBJECT_FLAG = 801;
 
-        public CachedDataResponseEVCacheTranscoder() {
-            kryo = new Kryo();
-            kryo.register(CachedResponse.class);
-        }
-        
-        
         @Override
         public boolean asyncDecode(CachedData d) {
             return false;
@@ -75,26 +78,21 @@ public class MemcacheRestCache  implements RestCache{
 
         @Override
         public CachedData encode(CachedResponse o) {
-            
-            try (final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                 final Output output = new Output(baos);){
-                 kryo.writeObject(output, o);
-                
-                 return new CachedData(CACHED_DATA_OBJECT_FLAG, output.getBuffer(), getMaxSize());
-            } catch (IOException e) {
-                throw new MemcacheRestCacheException("Could not encode " + o.getClass().getName(), e);
-            }
+            return new CachedData(CACHED_DATA_OBJECT_FLAG, CachedResponseCodec.encode(o), getMaxSize());
         }
 
         @Override
         public CachedResponse decode(CachedData d) {
-            
-            try (final ByteArrayInputStream bais = new ByteArrayInputStream(d.getData());
-                 final Input input = new Input(bais)){
-                
-                return kryo.readObject(input, CachedResponse.class);
-            } catch (IOException e) {
-                throw new MemcacheRestCacheException("Could not decode " + CachedResponse.class.getName(), e);
+
+            if (d.getFlags() != CACHED_DATA_OBJECT_FLAG) {
+                LOGGER.debug("Skipping cached data with flags {}", d.getFlags());
+                return null;
+            }
+            try {
+                return CachedResponseCodec.decode(d.getData());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Could not decode " + CachedResponse.class.getName(), e);
+                return null;
             }
         }
 
@@ -110,10 +108,16 @@ public class MemcacheRestCache  implements RestCache{
     final static private Logger LOGGER = LoggerFactory.getLogger(MemcacheRestCache.class);
     
     private final EVCache evCache;
+    private final long staleRetentionSeconds;
     
     
     public MemcacheRestCache(EVCache evCache) {
+        this(evCache, 0);
+    }
+
+    public MemcacheRestCache(EVCache evCache, long staleRetentionSeconds) {
         this.evCache = evCache;
+        this.staleRetentionSeconds = staleRetentionSeconds;
     }
 
     @Override
@@ -127,11 +131,37 @@ public class MemcacheRestCache  implements RestCache{
         }   
     }
 
+    /***
+     * Gets the keys with a single EVCache bulk get
+     */
+    @Override
+    public Map<String, CachedResponse> getAll(Collection<String> keys) {
+        LOGGER.debug("Getting keys from cache: {}", keys);
+
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        try {
+            final Map<String, CachedResponse> responses = new HashMap<>(evCache.getBulk(keys, TRANSCODER));
+            responses.values().removeIf(Objects::isNull);
+            return responses;
+        } catch (EVCacheException e) {
+            throw new MemcacheRestCacheException("Could not get keys " + keys, e);
+        }
+    }
+
     @Override
     public void set(String key, CachedResponse value) {
         LOGGER.debug("Setting cache: {} for {}",  key, value.getTTL());
         try {
             long ttl = value.getTTL();
+            if (ttl > 0) {
+                // Keep stale responses that may still be served or revalidated
+                ttl += Math.max(value.getStaleWhileRevalidate(), value.getStaleIfError());
+                if (value.isRevalidatable()) {
+                    ttl += staleRetentionSeconds;
+                }
+            }
 
             //Convert TTL to unix timestamp if time is greater than 30 days.
             if(ttl >= THIRTY_DAYS){
@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * <p>
+ * In-memory {@link RestCache} that keeps response bodies off the Java heap, in a direct memory arena, so that large
+ * local caches do not add to garbage collection pauses.  The keys, headers and other fields of the responses stay
+ * in an on-heap {@link GuavaRestCache} index, which bounds the cache by the size of the bodies.
+ * </p>
+ *
+ * <p>
+ * The arena is allocated up front, the size of the cache, and split into pages.  Pages are split into chunks of a
+ * power of two size on demand, like memcached's slabs, and each body is copied into the smallest chunk it fits in.
+ * A chunk is freed when its response is evicted, expired or replaced.  Bodies larger than a page, or for which
+ * no chunk is free, stay on the heap.
+ * </p>
+ *
+ * <p>
+ * Cache hits get a copy of the body on the heap, so that a freed chunk can be reused straight away without a caller
+ * still reading an evicted response seeing another response's bytes.  Only the short lived copies are garbage
+ * collected, the bodies at rest stay off the heap.  Direct memory is bounded by the JVM's -XX:MaxDirectMemorySize,
+ * which must be larger than the maximum size of the cache.
+ * </p>
+ *
+ * <pre>
+ * final RestCache restCache = OffHeapRestCache.create(512 * 1024 * 1024);
+ * </pre>
+ */
+public class OffHeapRestCache implements RestCache {
+
+    final static private Logger LOGGER = LoggerFactory.getLogger(OffHeapRestCache.class);
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final int MAX_PAGE_SIZE = 1024 * 1024;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024 * 1024;
+
+    private static class Chunk {
+
+        private final ByteBuffer buffer;
+        private final SizeClass sizeClass;
+        // The response whose body is in the chunk, guarded by the chunk
+        private CachedResponse owner;
+
+        private Chunk(ByteBuffer buffer, SizeClass sizeClass) {
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    private static class SizeClass {
+
+        private final int chunkSize;
+        private final Deque<Chunk> free = new ArrayDeque<>();
+
+        private SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    private final GuavaRestCache index;
+    private final int pageSize;
+    private final Deque<ByteBuffer> pages = new ArrayDeque<>();
+    private final List<SizeClass> sizeClasses = new ArrayList<>();
+    private final Map<CachedResponse, Chunk> chunks = new ConcurrentHashMap<>();
+
+    private OffHeapRestCache(GuavaRestCache.Builder index, long maximumBytes) {
+
+        Preconditions.checkArgument(maximumBytes >= MIN_CHUNK_SIZE, "maximumBytes must be at least %s",
+                MIN_CHUNK_SIZE);
+        this.pageSize = Integer.highestOneBit((int) Math.max(MIN_CHUNK_SIZE,
+                Math.min(MAX_PAGE_SIZE, maximumBytes / 16)));
+        for (int chunkSize = MIN_CHUNK_SIZE; chunkSize <= pageSize; chunkSize <<= 1) {
+            sizeClasses.add(new SizeClass(chunkSize));
+        }
+
+        long remaining = maximumBytes / pageSize * pageSize;
+        while (remaining > 0) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(remaining, MAX_BUFFER_SIZE / pageSize
+                    * pageSize));
+            for (int offset = 0; offset < buffer.capacity(); offset += pageSize) {
+                pages.add(slice(buffer, offset, pageSize));
+            }
+            remaining -= buffer.capacity();
+        }
+
+        this.index = Preconditions.checkNotNull(index, "index required")
+                .withMaximumWeight(maximumBytes)
+                .withWeigher(weigher())
+                .withRemovalListener(removalListener())
+                .build();
+    }
+
+    /***
+     * @param maximumBytes the size of the arena, and approximate size of the cached responses, in bytes
+     * @return an off-heap cache with an index bounded by the given size
+     */
+    public static OffHeapRestCache create(long maximumBytes) {
+        return create(GuavaRestCache.custom(), maximumBytes);
+    }
+
+    /***
+     * @param index the builder of the index of the responses, its maximum weight is set to maximumBytes
+     * @param maximumBytes the size of the arena, and approximate size of the cached responses, in bytes
+     * @return an off-heap cache with an index bounded by the given size
+     */
+    public static OffHeapRestCache create(GuavaRestCache.Builder index, long maximumBytes) {
+        return new OffHeapRestCache(index, maximumBytes);
+    }
+
+    @Override
+    public Optional<CachedResponse> get(String key) {
+
+        final Optional<CachedResponse> cached = index.get(key);
+        if (!cached.isPresent() || !cached.get().isDirect()) {
+            return cached;
+        }
+        final CachedResponse response = cached.get();
+        final Chunk chunk = chunks.get(response);
+        if (chunk == null) {
+            return Optional.empty();
+        }
+        synchronized (chunk) {
+            // The response may have been evicted and its chunk reused since it was looked up
+            return chunk.owner == response ? Optional.of(response.withHeapBody()) : Optional.empty();
+        }
+    }
+
+    /***
+     * @return true if the body of the response cached under the key is in the arena
+     */
+    boolean isOffHeap(String key) {
+        return index.get(key).map(chunks::containsKey).orElse(false);
+    }
+
+    @Override
+    public void set(String key, CachedResponse value) {
+
+        final byte[] storedBytes = value.getStoredBytes();
+        final int length = storedBytes == null ? 0 : storedBytes.length;
+        final Chunk chunk = allocate(length);
+        if (chunk == null) {
+            LOGGER.debug("No off-heap chunk for the {} bytes of {}", length, key);
+            // A direct body belongs to the chunk of another response
+            if (!value.isDirect()) {
+                index.set(key, value);
+            }
+            return;
+        }
+
+        final CachedResponse response;
+        synchronized (chunk) {
+            final ByteBuffer directBody = chunk.buffer.duplicate();
+            if (storedBytes != null) {
+                directBody.put(storedBytes);
+            }
+            directBody.flip();
+            response = value.withDirectBody(directBody.asReadOnlyBuffer());
+            chunk.owner = response;
+        }
+        chunks.put(response, chunk);
+        index.set(key, response);
+    }
+
+    @Override
+    public boolean isValueCaching() {
+        return index.isValueCaching();
+    }
+
+    /***
+     * @return a free chunk of the smallest size class the length fits in, or null if the length is larger than
+     *     a page or the arena is exhausted
+     */
+    private Chunk allocate(int length) {
+
+        if (length > pageSize) {
+            return null;
+        }
+        int smallest = 0;
+        while (sizeClasses.get(smallest).chunkSize < length) {
+            smallest++;
+        }
+        final SizeClass sizeClass = sizeClasses.get(smallest);
+
+        synchronized (sizeClass) {
+            if (sizeClass.free.isEmpty()) {
+                final ByteBuffer page;
+                synchronized (pages) {
+                    page = pages.pollFirst();
+                }
+                if (page == null) {
+                    return null;
+                }
+                for (int offset = 0; offset < pageSize; offset += sizeClass.chunkSize) {
+                    sizeClass.free.add(new Chunk(slice(page, offset, sizeClass.chunkSize), sizeClass));
+                }
+            }
+            return sizeClass.free.pollFirst();
+        }
+    }
+
+    private void release(Chunk chunk) {
+
+        synchronized (chunk) {
+            chunk.owner = null;
+        }
+        final SizeClass sizeClass = chunk.sizeClass;
+        synchronized (sizeClass) {
+            sizeClass.free.addFirst(chunk);
+        }
+    }
+
+    /***
+     * Weighs responses by the size of their chunk rather than of their body
+     */
+    private Weigher<String, CachedResponse> weigher() {
+
+        return (key, value) -> {
+            final Chunk chunk = chunks.get(value);
+            final int weight = GuavaRestCache.WEIGHER.weigh(key, value);
+            return chunk == null ? weight : weight - value.getStoredLength() + chunk.sizeClass.chunkSize;
+        };
+    }
+
+    private RemovalListener<String, CachedResponse> removalListener() {
+
+        return notification -> {
+            final Chunk chunk = notification.getValue() == null ? null : chunks.remove(notification.getValue());
+            if (chunk != null) {
+                release(chunk);
+            }
+        };
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+        return slice.slice();
+    }
+}
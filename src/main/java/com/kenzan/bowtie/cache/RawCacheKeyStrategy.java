@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+
+import com.netflix.client.http.HttpRequest.Verb;
+
+/***
+ * <p>
+ * {@link CacheKeyStrategy} that renders readable keys:  <CacheKeyGroup>:<Path>?<Query>, followed by
+ * ;<Header>=<Value> for each header the response varies on.  Long requests give long keys, which may exceed
+ * the 250 byte limit of memcached.
+ * </p>
+ */
+public class RawCacheKeyStrategy implements CacheKeyStrategy {
+
+    @Override
+    public String getCacheKey(String group, Verb verb, CharSequence path, List<String[]> query,
+            List<String[]> headers) {
+
+        final StringBuilder key = new StringBuilder(64);
+        if (group != null) {
+            key.append(group).append(':');
+        }
+        key.append(path);
+
+        char separator = '?';
+        for (String[] param : query) {
+            key.append(separator).append(encode(param[0])).append('=').append(encode(param[1]));
+            separator = '&';
+        }
+        for (String[] header : headers) {
+            key.append(';').append(encode(header[0])).append('=').append(encode(header[1]));
+        }
+        return key.toString();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -15,6 +15,9 @@
  */
 package com.kenzan.bowtie.cache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import com.netflix.niws.client.http.CachedResponse;
@@ -42,4 +45,40 @@ public interface RestCache {
      * @param httpResponse the value
      */
     public void set(String key, CachedResponse httpResponse);
+
+    /***
+     * Gets the {@link CachedResponse}s of several keys at once.  Remote caches should override it to fetch
+     * them in a single round trip.
+     *
+     * @param keys the keys
+     * @return the cached responses by key, without the keys that are not cached
+     */
+    public default Map<String, CachedResponse> getAll(Collection<String> keys) {
+        final Map<String, CachedResponse> responses = new HashMap<>();
+        for (String key : keys) {
+            get(key).ifPresent(response -> responses.put(key, response));
+        }
+        return responses;
+    }
+
+    /***
+     * Sets several {@link CachedResponse}s at once
+     *
+     * @param responses the responses by key
+     */
+    public default void setAll(Map<String, CachedResponse> responses) {
+        responses.forEach(this::set);
+    }
+
+    /***
+     * Whether the cache keeps the deserialized bodies of all responses with the {@link CachedResponse}
+     * instances it holds in memory, see {@link CachedResponse#setValue(java.lang.reflect.Type, Object)}.
+     * Cache hits then share the same object between callers, so it must not be modified.  Bodies of
+     * methods annotated {@link com.kenzan.bowtie.annotation.ImmutableResponse} are kept regardless.
+     *
+     * @return true if deserialized values should be kept with the cached responses
+     */
+    public default boolean isValueCaching() {
+        return false;
+    }
 }
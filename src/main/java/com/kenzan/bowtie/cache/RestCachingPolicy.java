@@ -16,8 +16,15 @@
 package com.kenzan.bowtie.cache;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,69 +50,145 @@ public class RestCachingPolicy {
         410 // Gone
         );
 
-    private final List<String> UNACCEPTABLE_CACHE_CONTROL_VALUE = Arrays.asList("no-store", "no-cache", "private");
-
-    private final List<String> ACCEPTABLE_CACHE_CONTROL_VALUE = Arrays.asList("max-age", "must-revalidate",
-        "proxy-revalidate", "public");
+    private final ConcurrentMap<String, SortedSet<String>> varyHeaders = new ConcurrentHashMap<>();
 
     public boolean isCachable(HttpResponse httpResponse) {
-        
+
+        return isCachable(httpResponse, CacheControl.of(httpResponse.getHeaders()));
+    }
+
+    /***
+     * Determines if a response is eligible for caching:  it must have a cacheable status, must not be
+     * no-store, no-cache or private, nor Vary on *, and must either have a positive TTL, or no freshness
+     * lifetime at all and be public, must-revalidate or proxy-revalidate.  Responses with a max-age of 0, or
+     * already expired, are not cached.
+     *
+     * @param httpResponse the response
+     * @param cacheControl the directives of the response, see {@link CacheControl#of(Map)}
+     * @return true if the response is cacheable
+     */
+    public boolean isCachable(HttpResponse httpResponse, CacheControl cacheControl) {
+
         LOGGER.debug("HttpStatus: {}", httpResponse.getStatus());
-        
-        // Acceptable to cache if one of the following headers
-        if (CACHEABLE_STATUSES.contains(httpResponse.getStatus())) {
-            final Optional<String> cacheControl =
-                Optional.ofNullable(httpResponse.getHeaders().get("Cache-Control")).map(
-                    list -> list.stream().findFirst().orElse(""));
-            
-            
-            LOGGER.debug("Found Cache-Control header: {}", cacheControl.isPresent());
-            if (cacheControl.isPresent()) {
-                // Explicitly cannot cache if the response has an unacceptable
-                // cache-control header
-                if (UNACCEPTABLE_CACHE_CONTROL_VALUE.stream().anyMatch(a -> cacheControl.get().contains(a))) {
-                    
-                    LOGGER.debug("Found UNACCEPTABLE_CACHE_CONTROL_VALUE in response");
-                    return false;
-                }
+        if (!CACHEABLE_STATUSES.contains(httpResponse.getStatus())) {
+            return false;
+        }
 
-                // Explicitly can cache the response has an acceptable
-                // cache-control header
-                if (ACCEPTABLE_CACHE_CONTROL_VALUE.stream().anyMatch(a -> cacheControl.get().contains(a))) {
-                    
-                    LOGGER.debug("Found ACCEPTABLE_CACHE_CONTROL_VALUE in response");
-                    return true;
-                }
-            }
+        // Varies on something other than request headers
+        if (getVary(httpResponse).contains("*")) {
+            LOGGER.debug("Found Vary: * in response");
+            return false;
         }
-        
-        return false;
+
+        LOGGER.debug("Response Cache-Control: {}", cacheControl);
+        if (cacheControl.isNoStore() || cacheControl.isNoCache() || cacheControl.isPrivate()) {
+            return false;
+        }
+        if (cacheControl.getFreshnessLifetime() != CacheControl.ABSENT) {
+            return cacheControl.getTTL() > 0;
+        }
+        return cacheControl.isPublic() || cacheControl.isMustRevalidate() || cacheControl.isProxyRevalidate();
     }
 
     public boolean isCachable(HttpRequest request) {
 
-        boolean isCacheable = true;
-        
-        LOGGER.debug("Verb: {}", request.getVerb());
-        if(request.getVerb() == Verb.GET){
-            
-            final Optional<String> cacheControl = 
-                            Optional.ofNullable(request.getHeaders().get("Cache-Control"))
-                                .map(list -> list.stream().findFirst().orElse(""));
-            
-            LOGGER.debug("Found Cache-Control header: {}", cacheControl.isPresent());
-            if (cacheControl.isPresent()) {
-                // Explicitly cannot cache if the response has an unacceptable
-                // cache-control header
-                if (UNACCEPTABLE_CACHE_CONTROL_VALUE.stream().anyMatch(a -> cacheControl.get().contains(a))) {
-                    LOGGER.debug("Found UNACCEPTABLE_CACHE_CONTROL_VALUE in request");
-                    
-                    isCacheable = false;
-                }
-            }
+        return isCachable(request.getVerb(), getHeader(request.getHeaders(), "Cache-Control"));
+    }
+
+    /***
+     * Determines if a request is eligible for caching from its verb and Cache-Control header alone, so the
+     * request need not be built to look it up in the cache.  Only GET requests are cacheable, unless they
+     * are no-store, no-cache, private or have a max-age of 0.
+     *
+     * @param verb the verb of the request
+     * @param requestCacheControl the Cache-Control header of the request, or null
+     * @return true if the request is cacheable
+     */
+    public boolean isCachable(Verb verb, String requestCacheControl) {
+
+        LOGGER.debug("Verb: {}", verb);
+        boolean isCacheable = verb == Verb.GET;
+        if (isCacheable && requestCacheControl != null) {
+            final CacheControl cacheControl = CacheControl.parse(requestCacheControl);
+            isCacheable = !cacheControl.isNoStore() && !cacheControl.isNoCache() && !cacheControl.isPrivate()
+                    && cacheControl.getMaxAge() != 0;
         }
-        
+
         LOGGER.debug("Request isCacheable: {}", isCacheable);
         return isCacheable;
     }
+
+    /***
+     * Parses the Vary header of a response
+     *
+     * @param httpResponse the response
+     * @return the names of the request headers the response varies on, in lower case and sorted
+     */
+    public SortedSet<String> getVary(HttpResponse httpResponse) {
+
+        final SortedSet<String> vary = new TreeSet<>();
+        httpResponse.getHeaders().forEach((header, values) -> {
+            if ("Vary".equalsIgnoreCase(header) && values != null) {
+                for (String value : values) {
+                    for (String name : value.split(",")) {
+                        name = name.trim();
+                        if (!name.isEmpty()) {
+                            vary.add(name.toLowerCase(Locale.ROOT));
+                        }
+                    }
+                }
+            }
+        });
+        return vary;
+    }
+
+    private static String getHeader(Map<String, Collection<String>> headers, String name) {
+
+        for (Map.Entry<String, Collection<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null
+                    && !header.getValue().isEmpty()) {
+                return header.getValue().iterator().next();
+            }
+        }
+        return null;
+    }
+
+    /***
+     * Records the headers the responses of a cache group vary on, in addition to those already recorded.
+     *
+     * @param group the cache group
+     * @param vary the names of the headers, see {@link #getVary(HttpResponse)}
+     * @return the names of all the headers recorded for the group
+     */
+    public SortedSet<String> recordVary(String group, Collection<String> vary) {
+
+        return varyHeaders.compute(group, (key, recorded) -> {
+            if (recorded != null && recorded.containsAll(vary)) {
+                return recorded;
+            }
+            final SortedSet<String> merged = recorded == null ? new TreeSet<>() : new TreeSet<>(recorded);
+            merged.addAll(vary);
+            LOGGER.debug("Responses of {} vary on {}", group, merged);
+            return Collections.unmodifiableSortedSet(merged);
+        });
+    }
+
+    /***
+     * @param group the cache group
+     * @return true once a cacheable response of the group has been seen, so that its Vary headers are known
+     */
+    public boolean isVaryKnown(String group) {
+
+        return varyHeaders.containsKey(group);
+    }
+
+    /***
+     * @param group the cache group
+     * @return the names of the headers the responses of the group are known to vary on, in lower case and
+     *     sorted
+     */
+    public SortedSet<String> getVaryHeaders(String group) {
+
+        return varyHeaders.getOrDefault(group, Collections.emptySortedSet());
+    }
 }
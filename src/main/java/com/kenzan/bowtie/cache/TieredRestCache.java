@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * <p>
+ * Two tier {@link RestCache}: a bounded in-memory near cache in front of a remote cache, typically a
+ * {@link MemcacheRestCache}.  Sets write through to both tiers, remote hits are promoted to the near cache.
+ * </p>
+ *
+ * <p>
+ * Near cache entries expire with the TTL of the {@link CachedResponse}, capped at maxLocalTtlSeconds,
+ * optionally shortened by a random jitter so that entries cached together do not expire together.  The
+ * near cache keeps the deserialized values of {@link com.kenzan.bowtie.annotation.ImmutableResponse}
+ * methods, so their hits skip deserialization, see {@link Builder#withValueCaching(boolean)}.
+ * </p>
+ *
+ * <pre>
+ * final RestCache restCache = TieredRestCache.custom(new MemcacheRestCache(evCache))
+ *         .withMaximumWeight(64 * 1024 * 1024)
+ *         .withJitter(0.1)
+ *         .build();
+ * </pre>
+ */
+public class TieredRestCache implements RestCache {
+
+    final static private Logger LOGGER = LoggerFactory.getLogger(TieredRestCache.class);
+
+    private static class LocalEntry {
+
+        private final CachedResponse response;
+        private final long expiresAt;
+
+        private LocalEntry(CachedResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final RestCache remote;
+    private final Cache<String, LocalEntry> local;
+    private final long maxLocalTtlMillis;
+    private final double jitter;
+    private final boolean valueCaching;
+
+    private TieredRestCache(Builder builder) {
+        this.remote = builder.remote;
+        this.maxLocalTtlMillis = TimeUnit.SECONDS.toMillis(builder.maxLocalTtlSeconds);
+        this.jitter = builder.jitter;
+        this.valueCaching = builder.valueCaching;
+        this.local = CacheBuilder.newBuilder()
+                .maximumWeight(builder.maximumWeight)
+                .weigher(new Weigher<String, LocalEntry>() {
+                    @Override
+                    public int weigh(String key, LocalEntry entry) {
+                        return GuavaRestCache.WEIGHER.weigh(key, entry.response);
+                    }
+                })
+                .expireAfterWrite(builder.maxLocalTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public static Builder custom(RestCache remote) {
+        return new Builder(remote);
+    }
+
+    @Override
+    public Optional<CachedResponse> get(String key) {
+
+        final LocalEntry entry = local.getIfPresent(key);
+        if (entry != null) {
+            if (System.currentTimeMillis() < entry.expiresAt) {
+                LOGGER.debug("Near cache hit: {}", key);
+                return Optional.of(entry.response);
+            }
+            local.invalidate(key);
+        }
+
+        final Optional<CachedResponse> response = remote.get(key);
+        response.ifPresent(value -> putLocal(key, value));
+        return response;
+    }
+
+    /***
+     * Gets the keys missing from the near cache with a single {@link RestCache#getAll(Collection)} of the
+     * remote cache
+     */
+    @Override
+    public Map<String, CachedResponse> getAll(Collection<String> keys) {
+
+        final Map<String, CachedResponse> responses = new HashMap<>();
+        final List<String> remoteKeys = new ArrayList<>();
+        for (String key : keys) {
+            final LocalEntry entry = local.getIfPresent(key);
+            if (entry != null && System.currentTimeMillis() < entry.expiresAt) {
+                responses.put(key, entry.response);
+            } else {
+                remoteKeys.add(key);
+            }
+        }
+
+        if (!remoteKeys.isEmpty()) {
+            remote.getAll(remoteKeys).forEach((key, value) -> {
+                putLocal(key, value);
+                responses.put(key, value);
+            });
+        }
+        return responses;
+    }
+
+    @Override
+    public void set(String key, CachedResponse value) {
+        putLocal(key, value);
+        remote.set(key, value);
+    }
+
+    @Override
+    public boolean isValueCaching() {
+        return valueCaching;
+    }
+
+    private void putLocal(String key, CachedResponse value) {
+
+        long ttlMillis = maxLocalTtlMillis;
+        if (value.getTTL() > 0) {
+            ttlMillis = Math.min(ttlMillis, TimeUnit.SECONDS.toMillis(value.getTTL()) - value.getAge());
+        }
+        if (jitter > 0) {
+            ttlMillis -= (long) (ttlMillis * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+
+        // Stale responses stay in the remote cache only, so they are revalidated
+        if (ttlMillis > 0) {
+            local.put(key, new LocalEntry(value, System.currentTimeMillis() + ttlMillis));
+        } else {
+            local.invalidate(key);
+        }
+    }
+
+    public static class Builder {
+
+        private final RestCache remote;
+        private long maximumWeight = 64 * 1024 * 1024;
+        private long maxLocalTtlSeconds = 60;
+        private double jitter;
+        private boolean valueCaching;
+
+        private Builder(RestCache remote) {
+            this.remote = Preconditions.checkNotNull(remote, "remote cache required");
+        }
+
+        /***
+         * @param maximumWeight the size of the near cache in approximate bytes, defaults to 64 MiB
+         * @return the builder
+         */
+        public Builder withMaximumWeight(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /***
+         * @param maxLocalTtlSeconds the longest time a response stays in the near cache, defaults to 60
+         * @return the builder
+         */
+        public Builder withMaxLocalTtl(long maxLocalTtlSeconds) {
+            this.maxLocalTtlSeconds = maxLocalTtlSeconds;
+            return this;
+        }
+
+        /***
+         * @param jitter the largest fraction, between 0 and 1, by which the near cache TTL is randomly
+         *     shortened, defaults to 0
+         * @return the builder
+         */
+        public Builder withJitter(double jitter) {
+            Preconditions.checkArgument(jitter >= 0 && jitter < 1, "jitter must be between 0 and 1");
+            this.jitter = jitter;
+            return this;
+        }
+
+        /***
+         * @param valueCaching true to keep the deserialized bodies of all responses, defaults to false so
+         *     only those of {@link com.kenzan.bowtie.annotation.ImmutableResponse} methods are kept
+         * @return the builder
+         */
+        public Builder withValueCaching(boolean valueCaching) {
+            this.valueCaching = valueCaching;
+            return this;
+        }
+
+        public TieredRestCache build() {
+            return new TieredRestCache(this);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.netflix.hystrix.HystrixCollapser.CollapsedRequest;
+
+/***
+ * <p>
+ * The argument of a collapsed call, along with the client it was made on.  Hystrix keeps one global collapser per
+ * key and batches with whichever instance registered it first, so the client travels with each call and the
+ * calls are sharded by client, each shard being sent with its own client's batch method.
+ * </p>
+ */
+final class CollapsedArgument {
+
+    private final MethodInfo batchInfo;
+    private final RequestExecutor requestExecutor;
+    private final String keyProperty;
+    private final Object key;
+
+    CollapsedArgument(final MethodInfo methodInfo, final MethodInfo batchInfo,
+            final RequestExecutor requestExecutor, final Object key) {
+        this.batchInfo = batchInfo;
+        this.requestExecutor = requestExecutor;
+        this.keyProperty = methodInfo.getCollapse().keyProperty();
+        this.key = key;
+    }
+
+    MethodInfo getBatchInfo() {
+        return batchInfo;
+    }
+
+    RequestExecutor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    String getKeyProperty() {
+        return keyProperty;
+    }
+
+    Object getKey() {
+        return key;
+    }
+
+    /***
+     * Groups the calls by the client they were made on, there being one {@link RequestExecutor} per client
+     *
+     * @param requests the calls
+     * @return the calls of each client
+     */
+    static <R> Collection<Collection<CollapsedRequest<R, Object>>> byClient(
+            final Collection<CollapsedRequest<R, Object>> requests) {
+
+        final Map<RequestExecutor, Collection<CollapsedRequest<R, Object>>> shards = new IdentityHashMap<>();
+        for (CollapsedRequest<R, Object> request : requests) {
+            shards.computeIfAbsent(of(request).requestExecutor, t -> new ArrayList<>()).add(request);
+        }
+        return shards.values();
+    }
+
+    /***
+     * @param requests the calls of a client
+     * @return their distinct keys, the argument of the batch method
+     */
+    static Set<Object> keys(final Collection<? extends CollapsedRequest<?, Object>> requests) {
+
+        final Set<Object> keys = new LinkedHashSet<>();
+        for (CollapsedRequest<?, Object> request : requests) {
+            keys.add(of(request).key);
+        }
+        return keys;
+    }
+
+    static CollapsedArgument of(final CollapsedRequest<?, Object> request) {
+        return (CollapsedArgument) request.getArgument();
+    }
+}
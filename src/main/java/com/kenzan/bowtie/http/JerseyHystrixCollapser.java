@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.netflix.hystrix.HystrixCollapser;
+import com.netflix.hystrix.HystrixCommand;
+
+/***
+ * <p>
+ * Hystrix collapser merging concurrent calls of a {@link com.kenzan.bowtie.annotation.Collapse collapsed}
+ * method into one {@link JerseyHystrixCommand} for its batch method.  The batch response is split back to
+ * the callers by key.  The calls of each client are batched separately, see {@link CollapsedArgument}.  See
+ * {@link JerseyHystrixObservableCollapser} for the nonBlocking execution mode.
+ * </p>
+ */
+public class JerseyHystrixCollapser extends HystrixCollapser<Object, Object, Object> {
+
+    private static final Map<Class<?>, Map<String, Function<Object, Object>>> KEY_READERS = new ConcurrentHashMap<>();
+
+    private final CollapsedArgument argument;
+
+    public JerseyHystrixCollapser(final MethodInfo methodInfo, final MethodInfo batchInfo,
+            final RequestExecutor requestExecutor, final Object[] args) {
+        super(methodInfo.getCollapserSetter());
+        this.argument = new CollapsedArgument(methodInfo, batchInfo, requestExecutor, args[0]);
+    }
+
+    @Override
+    public Object getRequestArgument() {
+        return argument;
+    }
+
+    @Override
+    protected Collection<Collection<CollapsedRequest<Object, Object>>> shardRequests(
+            final Collection<CollapsedRequest<Object, Object>> requests) {
+        return CollapsedArgument.byClient(requests);
+    }
+
+    @Override
+    protected HystrixCommand<Object> createCommand(
+            final Collection<CollapsedRequest<Object, Object>> requests) {
+
+        final CollapsedArgument first = CollapsedArgument.of(requests.iterator().next());
+        return new JerseyHystrixCommand(first.getBatchInfo(), first.getRequestExecutor(),
+                new Object[] { CollapsedArgument.keys(requests) });
+    }
+
+    @Override
+    protected void mapResponseToRequests(final Object batchResponse,
+            final Collection<CollapsedRequest<Object, Object>> requests) {
+
+        final Map<String, Object> byKey = byKey(batchResponse,
+                CollapsedArgument.of(requests.iterator().next()).getKeyProperty());
+        for (CollapsedRequest<Object, Object> request : requests) {
+            request.setResponse(byKey.get(String.valueOf(CollapsedArgument.of(request).getKey())));
+        }
+    }
+
+    /***
+     * Splits a batch response, an array, Iterable or Map, by the String value of the key of its elements
+     *
+     * @param batchResponse the response of the batch method
+     * @param keyProperty the property of the elements holding their key, ignored for Maps
+     * @return the elements by key
+     */
+    static Map<String, Object> byKey(final Object batchResponse, final String keyProperty) {
+
+        final Map<String, Object> byKey = new HashMap<>();
+        if (batchResponse instanceof Map) {
+            ((Map<?, ?>) batchResponse).forEach((k, v) -> byKey.put(String.valueOf(k), v));
+        } else if (batchResponse instanceof Iterable) {
+            for (Object element : (Iterable<?>) batchResponse) {
+                index(byKey, element, keyProperty);
+            }
+        } else if (batchResponse != null && batchResponse.getClass().isArray()) {
+            for (int i = 0; i < Array.getLength(batchResponse); i++) {
+                index(byKey, Array.get(batchResponse, i), keyProperty);
+            }
+        } else if (batchResponse != null) {
+            throw new IllegalStateException("Batch response must be an array, Iterable or Map, was "
+                    + batchResponse.getClass().getName());
+        }
+        return byKey;
+    }
+
+    private static void index(final Map<String, Object> byKey, final Object element, final String keyProperty) {
+        if (element != null) {
+            byKey.put(String.valueOf(keyReader(element.getClass(), keyProperty).apply(element)), element);
+        }
+    }
+
+    /***
+     * Resolves, once per class and property, a function reading the property through its getter or,
+     * failing that, its field.
+     */
+    private static Function<Object, Object> keyReader(final Class<?> clazz, final String property) {
+
+        return KEY_READERS.computeIfAbsent(clazz, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(property, p -> {
+                    if (Map.class.isAssignableFrom(clazz)) {
+                        return element -> ((Map<?, ?>) element).get(p);
+                    }
+                    try {
+                        for (PropertyDescriptor descriptor : Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
+                            if (descriptor.getName().equals(p) && descriptor.getReadMethod() != null) {
+                                return element -> invoke(() -> descriptor.getReadMethod().invoke(element));
+                            }
+                        }
+                    } catch (IntrospectionException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+                        try {
+                            final Field field = c.getDeclaredField(p);
+                            field.setAccessible(true);
+                            return element -> invoke(() -> field.get(element));
+                        } catch (NoSuchFieldException e) {
+                            // keep looking in the superclass
+                        }
+                    }
+                    throw new IllegalStateException("No key property " + p + " on " + clazz.getName());
+                });
+    }
+
+    private static Object invoke(final ReflectiveCall call) {
+        try {
+            return call.call();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReflectiveCall {
+        Object call() throws ReflectiveOperationException;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.util.Collection;
+import java.util.Map;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+import com.netflix.hystrix.HystrixCollapser.CollapsedRequest;
+import com.netflix.hystrix.HystrixObservableCollapser;
+import com.netflix.hystrix.HystrixObservableCommand;
+
+/***
+ * <p>
+ * Hystrix collapser merging concurrent calls of a {@link com.kenzan.bowtie.annotation.Collapse collapsed}
+ * method into one {@link JerseyHystrixObservableCommand} for its batch method, for the
+ * {@link com.kenzan.bowtie.annotation.ExecutionMode#nonBlocking} execution mode.  The batch response is split
+ * into its elements by key, which are emitted to the callers.
+ * </p>
+ */
+public class JerseyHystrixObservableCollapser extends HystrixObservableCollapser<String, Object, Object, Object> {
+
+    private final CollapsedArgument argument;
+
+    public JerseyHystrixObservableCollapser(final MethodInfo methodInfo, final MethodInfo batchInfo,
+            final RequestExecutor requestExecutor, final Object[] args) {
+        super(methodInfo.getObservableCollapserSetter());
+        this.argument = new CollapsedArgument(methodInfo, batchInfo, requestExecutor, args[0]);
+    }
+
+    @Override
+    public Object getRequestArgument() {
+        return argument;
+    }
+
+    @Override
+    protected Collection<Collection<CollapsedRequest<Object, Object>>> shardRequests(
+            final Collection<CollapsedRequest<Object, Object>> requests) {
+        return CollapsedArgument.byClient(requests);
+    }
+
+    @Override
+    protected HystrixObservableCommand<Object> createCommand(
+            final Collection<CollapsedRequest<Object, Object>> requests) {
+
+        final CollapsedArgument first = CollapsedArgument.of(requests.iterator().next());
+        return new JerseyHystrixObservableCommand(first.getBatchInfo(), first.getRequestExecutor(),
+                new Object[] { CollapsedArgument.keys(requests) }) {
+            @Override
+            protected Observable<Object> construct() {
+                return super.construct().concatMap(batchResponse -> Observable.from(
+                        JerseyHystrixCollapser.byKey(batchResponse, first.getKeyProperty()).entrySet()));
+            }
+        };
+    }
+
+    @Override
+    protected Func1<Object, String> getBatchReturnTypeKeySelector() {
+        return entry -> (String) ((Map.Entry<?, ?>) entry).getKey();
+    }
+
+    @Override
+    protected Func1<Object, String> getRequestArgumentKeySelector() {
+        return argument -> String.valueOf(((CollapsedArgument) argument).getKey());
+    }
+
+    @Override
+    protected Func1<Object, Object> getBatchReturnTypeToResponseTypeMapper() {
+        return entry -> ((Map.Entry<?, ?>) entry).getValue();
+    }
+
+    @Override
+    protected void onMissingResponse(final CollapsedRequest<Object, Object> request) {
+        request.setResponse(null);
+    }
+}
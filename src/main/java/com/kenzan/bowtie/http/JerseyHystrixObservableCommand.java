@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.util.Map;
+
+import rx.Observable;
+
+import com.netflix.hystrix.HystrixObservableCommand;
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * <p>
+ * Semaphore isolated Hystrix command executing a client method call with the {@link RequestExecutor}.  Used with
+ * {@link com.kenzan.bowtie.annotation.ExecutionMode#nonBlocking} so that no Hystrix thread is held while the
+ * request is in flight, and for {@link com.kenzan.bowtie.annotation.Streaming} methods in either mode.
+ * </p>
+ */
+public class JerseyHystrixObservableCommand extends HystrixObservableCommand<Object> {
+
+    private final MethodInfo methodInfo;
+    private final RequestExecutor requestExecutor;
+    private final Object[] args;
+    private final Map<String, CachedResponse> prefetched;
+
+    public JerseyHystrixObservableCommand(final MethodInfo methodInfo,
+            final RequestExecutor requestExecutor, final Object[] args) {
+        this(methodInfo, requestExecutor, args, null);
+    }
+
+    /***
+     * @param prefetched the cached responses by cache key, see {@link RequestExecutor#prefetch}, or null to
+     *     look the response up in the cache
+     */
+    public JerseyHystrixObservableCommand(final MethodInfo methodInfo,
+            final RequestExecutor requestExecutor, final Object[] args,
+            final Map<String, CachedResponse> prefetched) {
+        super(methodInfo.getObservableSetter());
+        this.methodInfo = methodInfo;
+        this.requestExecutor = requestExecutor;
+        this.args = args;
+        this.prefetched = prefetched;
+    }
+
+    @Override
+    protected Observable<Object> construct() {
+        return methodInfo.isStreaming() ? requestExecutor.stream(methodInfo, args)
+                : requestExecutor.execute(methodInfo, args, prefetched);
+    }
+}
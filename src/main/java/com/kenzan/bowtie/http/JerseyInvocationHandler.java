@@ -16,14 +16,25 @@
 package com.kenzan.bowtie.http;
 
 import com.kenzan.bowtie.RestAdapterConfig;
+import com.kenzan.bowtie.annotation.ExecutionMode;
 import com.kenzan.bowtie.serializer.MessageSerializer;
+import com.netflix.client.http.HttpResponse;
+import com.netflix.niws.client.http.CachedResponse;
 import com.netflix.niws.client.http.RestClient;
+import com.netflix.ribbon.proxy.annotation.Http;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import rx.Observable;
+import rx.Subscription;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,7 +46,10 @@ import org.slf4j.LoggerFactory;
  * </p>
  * 
  * <p>
- * The InvocationHandler then passes the {@link MethodInfo} and the runtime parameters to a generic {@link JerseyHystrixCommand} to execute the HTTP request
+ * The InvocationHandler then passes the {@link MethodInfo} and the runtime parameters to a generic {@link JerseyHystrixCommand} to execute the HTTP request,
+ * or to a {@link JerseyHystrixObservableCommand} when the {@link ExecutionMode} is nonBlocking.  Calls of
+ * collapsed methods go through a {@link JerseyHystrixCollapser}, or a {@link JerseyHystrixObservableCollapser}
+ * when nonBlocking.
  * </p>
  * 
  * <p>
@@ -48,24 +62,160 @@ public class JerseyInvocationHandler implements InvocationHandler{
 	
 	final static private Logger LOGGER = LoggerFactory.getLogger(JerseyInvocationHandler.class);
     private final Map<Method, MethodInfo> cache = new ConcurrentHashMap<>();
-    private final RestClient restClient;
     private final RestAdapterConfig restAdapterConfig;
+    private final RequestExecutor requestExecutor;
 
     public JerseyInvocationHandler(RestClient restClient, RestAdapterConfig restAdapterConfig) {
+        this(restClient, new RestClientTransport(restClient), restAdapterConfig);
+    }
+
+    public JerseyInvocationHandler(RestClient restClient, HttpTransport transport, RestAdapterConfig restAdapterConfig) {
         this.restAdapterConfig = restAdapterConfig;
-        this.restClient = restClient;
+        this.requestExecutor = new RequestExecutor(transport, restAdapterConfig,
+                restClient.getJerseyClient().getMessageBodyWorkers());
+    }
+
+    /***
+     * Builds the {@link MethodInfo} of every Http method of the client interface and lets the
+     * {@link MessageSerializer} prepare for its response and body types, so the first call of each method
+     * does no introspection.  Invalid method annotations fail here rather than on the first call.
+     *
+     * @param clientClass the client interface
+     */
+    public void warmUp(Class<?> clientClass) {
+
+        final MessageSerializer serializer = restAdapterConfig.getMessageSerializer();
+        for (Method method : clientClass.getMethods()) {
+            if (!method.isAnnotationPresent(Http.class)) {
+                continue;
+            }
+            final MethodInfo methodInfo = getMethodInfo(method);
+            if (!HttpResponse.class.equals(methodInfo.getResponseClass())) {
+                serializer.prepare(methodInfo.getGenericResponseType());
+            }
+            if (methodInfo.getBodyType() != null) {
+                serializer.prepare(methodInfo.getBodyType());
+            }
+        }
     }
 
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
     	LOGGER.debug("args: {} = {}", method.getName(), args == null ? "NULL" : Arrays.asList(args));
         
+        final MethodInfo methodInfo = getMethodInfo(method);
+
+        if (methodInfo.isCollapsed()) {
+            if (restAdapterConfig.getExecutionMode() == ExecutionMode.nonBlocking) {
+                JerseyHystrixObservableCollapser collapser = new JerseyHystrixObservableCollapser(methodInfo,
+                        getMethodInfo(methodInfo.getBatchMethod()), this.requestExecutor, args);
+                if (methodInfo.isFuture()) {
+                    return toFuture(collapser.toObservable());
+                }
+                return methodInfo.isObservable() ? collapser.observe() : collapser.observe().toBlocking().single();
+            }
+            JerseyHystrixCollapser collapser = new JerseyHystrixCollapser(methodInfo,
+                    getMethodInfo(methodInfo.getBatchMethod()), this.requestExecutor, args);
+            if (methodInfo.isFuture()) {
+                return toFuture(collapser.toObservable());
+            }
+            return methodInfo.isObservable() ? collapser.observe() : collapser.execute();
+        }
+
+        // Streams are cold so that nothing is read before the subscriber requests it
+        if (methodInfo.isStreaming()) {
+            return new JerseyHystrixObservableCommand(methodInfo, this.requestExecutor, args).toObservable();
+        }
+
+        if (restAdapterConfig.getExecutionMode() == ExecutionMode.nonBlocking) {
+            JerseyHystrixObservableCommand command = new JerseyHystrixObservableCommand(methodInfo, this.requestExecutor, args);
+            if (methodInfo.isFuture()) {
+                return toFuture(command.toObservable());
+            }
+            return methodInfo.isObservable() ? command.observe() : command.observe().toBlocking().single();
+        }
+
+        JerseyHystrixCommand command = new JerseyHystrixCommand(methodInfo, this.requestExecutor, args);
+        if (methodInfo.isFuture()) {
+            return toFuture(command.toObservable());
+        }
+        return methodInfo.isObservable() ? command.observe() : command.execute();
+    }
+
+    /***
+     * Invokes several Http methods of the client together: the cached responses of the cacheable calls are got
+     * with a single {@link com.kenzan.bowtie.cache.RestCache#getAll(java.util.Collection)}, then every call
+     * is dispatched at once, so the cache misses are sent in parallel.
+     *
+     * @param methods the methods, which must return the response object rather than an Observable or Future
+     * @param args the arguments of each call
+     * @return a future of the response object of each call
+     */
+    public List<CompletableFuture<Object>> invokeAll(List<Method> methods, List<Object[]> args) {
+
+        final List<MethodInfo> methodInfos = new ArrayList<>(methods.size());
+        for (Method method : methods) {
+            final MethodInfo methodInfo = getMethodInfo(method);
+            if (methodInfo.isObservable() || methodInfo.isFuture()) {
+                throw new IllegalArgumentException("Batched method " + method.getName()
+                        + " must return the response object");
+            }
+            methodInfos.add(methodInfo);
+        }
+
+        final Map<String, CachedResponse> prefetched = requestExecutor.prefetch(methodInfos, args);
+
+        final List<CompletableFuture<Object>> futures = new ArrayList<>(methods.size());
+        for (int i = 0; i < methodInfos.size(); i++) {
+            final MethodInfo methodInfo = methodInfos.get(i);
+            final Observable<Object> observable;
+            if (methodInfo.isCollapsed() && restAdapterConfig.getExecutionMode() == ExecutionMode.nonBlocking) {
+                observable = new JerseyHystrixObservableCollapser(methodInfo,
+                        getMethodInfo(methodInfo.getBatchMethod()), this.requestExecutor, args.get(i)).toObservable();
+            } else if (methodInfo.isCollapsed()) {
+                observable = new JerseyHystrixCollapser(methodInfo, getMethodInfo(methodInfo.getBatchMethod()),
+                        this.requestExecutor, args.get(i)).toObservable();
+            } else if (restAdapterConfig.getExecutionMode() == ExecutionMode.nonBlocking) {
+                observable = new JerseyHystrixObservableCommand(methodInfo, this.requestExecutor, args.get(i),
+                        prefetched).toObservable();
+            } else {
+                observable = new JerseyHystrixCommand(methodInfo, this.requestExecutor, args.get(i),
+                        prefetched).toObservable();
+            }
+            futures.add(toFuture(observable));
+        }
+        return futures;
+    }
+
+    private MethodInfo getMethodInfo(Method method) {
+
         MethodInfo methodInfo = cache.get(method);
         if(methodInfo == null){
             methodInfo = new MethodInfo(method, this.restAdapterConfig);
             cache.put(method, methodInfo);
         }
-        
-        JerseyHystrixCommand command = new JerseyHystrixCommand(methodInfo, this.restClient, this.restAdapterConfig, args);
-        return methodInfo.isObservable() ? command.observe() : command.execute();
+        return methodInfo;
+    }
+
+    /***
+     * Subscribes to the command and completes the future on the completion executor, so that
+     * dependent stages do not run on a Hystrix or event loop thread.  Cancelling the future
+     * unsubscribes from the command.
+     */
+    private CompletableFuture<Object> toFuture(Observable<Object> observable) {
+
+        final Executor executor = restAdapterConfig.getCompletionExecutor();
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        final Subscription subscription = observable.single().subscribe(
+                value -> executor.execute(() -> future.complete(value)),
+                error -> executor.execute(() -> future.completeExceptionally(error)));
+
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) {
+                subscription.unsubscribe();
+            }
+        });
+
+        return future;
     }
 }
\ No newline at end of file
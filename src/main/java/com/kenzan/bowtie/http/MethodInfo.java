@@ -15,52 +15,113 @@
  */
 package com.kenzan.bowtie.http;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
-import javax.ws.rs.core.UriBuilder;
-
 import rx.Observable;
 
 import com.kenzan.bowtie.RestAdapterConfig;
 import com.kenzan.bowtie.annotation.Body;
 import com.kenzan.bowtie.annotation.CacheKeyGroup;
+import com.kenzan.bowtie.annotation.Collapse;
 import com.kenzan.bowtie.annotation.Cookie;
 import com.kenzan.bowtie.annotation.Cookies;
 import com.kenzan.bowtie.annotation.HeaderParam;
 import com.kenzan.bowtie.annotation.HystrixGroup;
+import com.kenzan.bowtie.annotation.ImmutableResponse;
 import com.kenzan.bowtie.annotation.Path;
 import com.kenzan.bowtie.annotation.Query;
 import com.kenzan.bowtie.annotation.ResponseType;
+import com.kenzan.bowtie.annotation.Streaming;
+import com.kenzan.bowtie.cache.CacheKeyStrategy;
+import com.kenzan.bowtie.cache.HashedCacheKeyStrategy;
+import com.kenzan.bowtie.serializer.MessageSerializer;
 import com.netflix.client.http.HttpRequest;
 import com.netflix.client.http.HttpRequest.Builder;
+import com.netflix.client.http.HttpRequest.Verb;
+import com.netflix.client.http.HttpResponse;
+import com.netflix.hystrix.HystrixCollapser;
+import com.netflix.hystrix.HystrixCollapser.Scope;
+import com.netflix.hystrix.HystrixCollapserKey;
+import com.netflix.hystrix.HystrixCollapserProperties;
+import com.netflix.hystrix.HystrixObservableCollapser;
 import com.netflix.hystrix.HystrixCommand.Setter;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
+import com.netflix.hystrix.HystrixObservableCommand;
 import com.netflix.ribbon.proxy.annotation.Http;
 
+/***
+ * <p>
+ * Metadata for a client method.  The method's annotations are introspected once and compiled into
+ * a binding plan: the parameter indexes for each annotation kind, a pre-split {@link PathTemplate}
+ * and the static headers and cookies.  Rendering a request is then a single pass over the arguments.
+ * </p>
+ */
 public class MethodInfo {
 
+    private static final int[] NONE = new int[0];
+
     private final Setter setter;
-    private final Parameter[] parameters;
+    private final HystrixObservableCommand.Setter observableSetter;
     private final Class<?> responseClass;
-    private final Map<String, String> headers;
+    private final Type genericResponseType;
     private final Http http;
+    private final Verb verb;
     private final Optional<Cookies> cookiesAnnotation;
     private final Optional<ResponseType> responseType;
     private final HystrixGroup hystrix;
     private final boolean isObservable;
+    private final boolean isFuture;
+    private final boolean isStreaming;
+    private final boolean isImmutableResponse;
     private final String cacheKeyGroup;
-    private List<String> cookies = new ArrayList<>();
+    private final String cacheGroup;
     private final RestAdapterConfig restAdapterConfig;
 
+    // Request collapsing
+    private final Optional<Collapse> collapse;
+    private final Method batchMethod;
+    private final HystrixCollapser.Setter collapserSetter;
+    private final HystrixObservableCollapser.Setter observableCollapserSetter;
+
+    // Binding plan
+    private final PathTemplate pathTemplate;
+    private final int[] pathSlots;
+    private final int[] queryIndexes;
+    private final String[] queryNames;
+    private final int[] headerIndexes;
+    private final String[] headerNames;
+    private final int[] cookieIndexes;
+    private final String[] cookieNames;
+    private final int bodyIndex;
+    private final Type bodyType;
+    private final String[] staticHeaderNames;
+    private final String[] staticHeaderValues;
+    private final String entityContentType;
+    private final String staticCookies;
+    private final int cacheControlIndex;
+    private final String staticCacheControl;
+    private final CacheKeyStrategy cacheKeyStrategy;
+
     public MethodInfo(final Method method,
             final RestAdapterConfig restAdapterConfig) {
 
@@ -96,24 +157,75 @@ public class MethodInfo {
                 .filter(a -> CacheKeyGroup.class.equals(a.annotationType()))
                 .map(a -> a == null ? null : ((CacheKeyGroup) a).value())
                 .findFirst().orElse(null);
+        this.cacheKeyStrategy = restAdapterConfig == null || restAdapterConfig.getCacheKeyStrategy() == null
+                ? new HashedCacheKeyStrategy() : restAdapterConfig.getCacheKeyStrategy();
 
         this.setter = Setter.withGroupKey(
                 HystrixCommandGroupKey.Factory.asKey(hystrix.groupKey()))
                 .andCommandKey(
                         HystrixCommandKey.Factory.asKey(hystrix.commandKey()));
 
-        this.parameters = method.getParameters();
+        this.observableSetter = HystrixObservableCommand.Setter.withGroupKey(
+                HystrixCommandGroupKey.Factory.asKey(hystrix.groupKey()))
+                .andCommandKey(
+                        HystrixCommandKey.Factory.asKey(hystrix.commandKey()))
+                .andCommandPropertiesDefaults(
+                        HystrixCommandProperties.Setter().withExecutionIsolationStrategy(
+                                ExecutionIsolationStrategy.SEMAPHORE));
+
+        this.verb = Verb.valueOf(http.method().toString());
 
-        this.headers = Arrays.stream(http.headers()).collect(
-                Collectors.toMap(t -> t.name(), t -> t.value()));
+        // PARAMETER BINDINGS
+        final Parameter[] parameters = method.getParameters();
+        final List<Integer> queries = new ArrayList<>();
+        final List<Integer> headerParams = new ArrayList<>();
+        final List<Integer> cookieParams = new ArrayList<>();
+        int body = -1;
 
-        if (headers.containsKey("Cookie")) {
-            cookies.add(this.headers.remove("Cookie"));
+        for (int i = 0; i < parameters.length; i++) {
+            final Parameter parameter = parameters[i];
+            if (parameter.isAnnotationPresent(Query.class)) {
+                queries.add(i);
+            }
+            if (parameter.isAnnotationPresent(HeaderParam.class)) {
+                headerParams.add(i);
+            }
+            if (parameter.isAnnotationPresent(Cookie.class)) {
+                cookieParams.add(i);
+            }
+            if (parameter.isAnnotationPresent(Body.class)) {
+                body = i;
+            }
         }
-        if (cookiesAnnotation.isPresent()) {
-            cookies.addAll(Arrays.stream(cookiesAnnotation.get().cookies())
-                    .map(cookie -> cookie.name() + "=" + cookie.value())
-                    .collect(Collectors.toList()));
+
+        this.queryIndexes = toArray(queries);
+        this.queryNames = queries.stream()
+                .map(i -> parameters[i].getAnnotation(Query.class).value())
+                .toArray(String[]::new);
+        this.headerIndexes = toArray(headerParams);
+        this.headerNames = headerParams.stream()
+                .map(i -> parameters[i].getAnnotation(HeaderParam.class).name())
+                .toArray(String[]::new);
+        this.cookieIndexes = toArray(cookieParams);
+        this.cookieNames = cookieParams.stream()
+                .map(i -> parameters[i].getAnnotation(Cookie.class).name())
+                .toArray(String[]::new);
+        this.bodyIndex = body;
+        this.bodyType = body < 0 ? null : parameters[body].getParameterizedType();
+
+        // URI TEMPLATE
+        this.pathTemplate = PathTemplate.compile(http.uri());
+        this.cacheGroup = cacheKeyGroup != null ? cacheKeyGroup : verb + " " + http.uri();
+        final String[] slotNames = pathTemplate.getNames();
+        this.pathSlots = new int[slotNames.length];
+        for (int slot = 0; slot < slotNames.length; slot++) {
+            pathSlots[slot] = -1;
+            for (int i = 0; i < parameters.length; i++) {
+                final Path path = parameters[i].getAnnotation(Path.class);
+                if (path != null && path.value().equals(slotNames[slot])) {
+                    pathSlots[slot] = i;
+                }
+            }
         }
 
         @SuppressWarnings("rawtypes")
@@ -127,113 +239,180 @@ public class MethodInfo {
         }
 
         this.isObservable = Observable.class.equals(returnType);
-        if (this.isObservable) {
-            this.responseClass = Optional.ofNullable(httpClass).orElseThrow(
-                    () -> new IllegalStateException(
-                            "Http responseClass is required for observables"));
+        this.isFuture = CompletableFuture.class.equals(returnType) || Future.class.equals(returnType);
+        if (httpClass != null) {
+            this.genericResponseType = httpClass;
+        } else if (this.isFuture || this.isObservable) {
+            this.genericResponseType = typeArgument(method.getGenericReturnType());
         } else {
-            this.responseClass = Optional.ofNullable(httpClass).orElse(
-                    returnType);
+            this.genericResponseType = method.getGenericReturnType();
         }
+        this.responseClass = rawClass(genericResponseType);
 
-        this.restAdapterConfig = restAdapterConfig;
-
-    }
-
-    private String getRenderedPath(final Object[] args) {
+        // STATIC HEADERS AND COOKIES
+        final Map<String, String> headers = Arrays.stream(http.headers()).collect(
+                Collectors.toMap(t -> t.name(), t -> t.value()));
 
-        final Map<String, Object> map = new HashMap<>();
+        final List<String> cookies = new ArrayList<>();
+        if (headers.containsKey("Cookie")) {
+            cookies.add(headers.remove("Cookie"));
+        }
+        if (cookiesAnnotation.isPresent()) {
+            cookies.addAll(Arrays.stream(cookiesAnnotation.get().cookies())
+                    .map(cookie -> cookie.name() + "=" + cookie.value())
+                    .collect(Collectors.toList()));
+        }
+        this.staticCookies = cookies.isEmpty() ? null : String.join(";", cookies);
 
-        for (int i = 0; i < parameters.length; i++) {
-            final int count = i;
-            Optional.ofNullable(parameters[count].getAnnotation(Path.class))
-                    .ifPresent(p -> {
-                        map.put(p.value(), args[count]);
-                    });
+        // Negotiated data format, unless declared
+        final MessageSerializer serializer = restAdapterConfig == null ? null
+                : restAdapterConfig.getMessageSerializer();
+        if (serializer != null && serializer.getAccept() != null && !HttpResponse.class.equals(responseClass)) {
+            putIfUndeclared(headers, "Accept", serializer.getAccept());
         }
+        // The Content-Type is only sent with a request body
+        this.entityContentType = serializer != null && bodyIndex >= 0
+                && headers.keySet().stream().noneMatch("Content-Type"::equalsIgnoreCase)
+                && Arrays.stream(headerNames).noneMatch("Content-Type"::equalsIgnoreCase)
+                ? serializer.getContentType() : null;
+
+        // Parameter headers override the static values
+        headers.keySet().removeIf(name -> Arrays.stream(headerNames).anyMatch(name::equalsIgnoreCase));
+        this.staticHeaderNames = headers.keySet().toArray(new String[headers.size()]);
+        this.staticHeaderValues = Arrays.stream(staticHeaderNames).map(headers::get).toArray(String[]::new);
+
+        int cacheControlIndex = -1;
+        for (int i = 0; i < headerNames.length; i++) {
+            if ("Cache-Control".equalsIgnoreCase(headerNames[i])) {
+                cacheControlIndex = headerIndexes[i];
+            }
+        }
+        this.cacheControlIndex = cacheControlIndex;
+        this.staticCacheControl = headers.entrySet().stream()
+                .filter(header -> "Cache-Control".equalsIgnoreCase(header.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst().orElse(null);
 
-        String renderedPath = UriBuilder.fromPath(http.uri())
-                .buildFromEncodedMap(map).toString();
-        return renderedPath;
+        this.isStreaming = method.isAnnotationPresent(Streaming.class);
+        if (this.isStreaming && !this.isObservable) {
+            throw new IllegalStateException("Streaming method " + method.getName()
+                    + " must return an Observable");
+        }
 
-    }
+        this.isImmutableResponse = method.isAnnotationPresent(ImmutableResponse.class)
+                || this.responseClass.isAnnotationPresent(ImmutableResponse.class);
 
-    private Map<String, String> getHeaders(final Object[] args) {
-        Map<String, String> allHeaders = this.headers;
+        this.restAdapterConfig = restAdapterConfig;
 
-        for (int i = 0; i < parameters.length; i++) {
-            final Parameter parameter = parameters[i];
-            HeaderParam annotation = parameter.getAnnotation(HeaderParam.class);
-            if (annotation != null) {
-                allHeaders.put(annotation.name(), String.valueOf(args[i]));
+        // REQUEST COLLAPSING
+        this.collapse = Optional.ofNullable(method.getAnnotation(Collapse.class));
+        if (collapse.isPresent()) {
+            if (parameters.length != 1) {
+                throw new IllegalStateException("Collapsed method " + method.getName()
+                        + " must take exactly one parameter");
             }
+            this.batchMethod = findBatchMethod(method, collapse.get().batchMethod());
+
+            // The calls of each client are batched separately by the collapsers, see CollapsedArgument, so the
+            // key only names the method.  Hystrix keeps one global collapser per key whichever its kind, so the
+            // nonBlocking one gets its own key.
+            final String clientName = restAdapterConfig == null ? null : restAdapterConfig.getClientName();
+            final String collapserName = (clientName == null ? "" : clientName + ".")
+                    + method.getDeclaringClass().getName() + "." + method.getName();
+            final HystrixCollapserProperties.Setter collapserProperties = HystrixCollapserProperties.Setter()
+                    .withTimerDelayInMilliseconds(collapse.get().windowMs())
+                    .withMaxRequestsInBatch(collapse.get().maxBatchSize());
+            this.collapserSetter = HystrixCollapser.Setter
+                    .withCollapserKey(HystrixCollapserKey.Factory.asKey(collapserName))
+                    .andScope(Scope.GLOBAL)
+                    .andCollapserPropertiesDefaults(collapserProperties);
+            this.observableCollapserSetter = HystrixObservableCollapser.Setter
+                    .withCollapserKey(HystrixCollapserKey.Factory.asKey(collapserName + ".nonBlocking"))
+                    .andScope(HystrixObservableCollapser.Scope.GLOBAL)
+                    .andCollapserPropertiesDefaults(collapserProperties);
+        } else {
+            this.batchMethod = null;
+            this.collapserSetter = null;
+            this.observableCollapserSetter = null;
         }
 
-        return allHeaders;
     }
 
-    private Optional<Object> getBody(Object[] args) {
+    private static void putIfUndeclared(final Map<String, String> headers, final String name, final String value) {
 
-        Object body = null;
-        for (int i = 0; i < parameters.length; i++) {
-            final Parameter parameter = parameters[i];
-            Body annotation = parameter.getAnnotation(Body.class);
-            if (annotation != null) {
-                body = args[i];
-            }
+        if (headers.keySet().stream().noneMatch(name::equalsIgnoreCase)) {
+            headers.put(name, value);
         }
-
-        return Optional.ofNullable(body);
     }
 
-    private Map<String, String> getQueryParameters(Object[] args) {
+    private static Method findBatchMethod(final Method method, final String name) {
 
-        final Map<String, String> paramMap = new HashMap<>();
+        final List<Method> candidates = Arrays.stream(method.getDeclaringClass().getMethods())
+                .filter(m -> m.getName().equals(name) && m.getParameterCount() == 1)
+                .collect(Collectors.toList());
+        if (candidates.size() != 1) {
+            throw new IllegalStateException("Expected one batch method named " + name
+                    + " with a single parameter on " + method.getDeclaringClass().getName()
+                    + ", found " + candidates.size());
+        }
+        return candidates.get(0);
+    }
 
-        for (int i = 0; i < parameters.length; i++) {
-            final Query queryParam = parameters[i].getAnnotation(Query.class);
-            if (queryParam != null) {
-                final Object arg = args[i];
-
-                if (arg != null) {
-                    Optional<?> value = Optional.empty();
-                    if (Optional.class.equals(arg.getClass())) {
-                        final Optional<?> optional = ((Optional<?>) arg);
-
-                        if (optional.isPresent()) {
-                            value = optional;
-                        }
-                    } else if (com.google.common.base.Optional.class
-                            .isAssignableFrom(arg.getClass())) {
-                        final com.google.common.base.Optional<?> optional = ((com.google.common.base.Optional<?>) arg);
-
-                        if (optional.isPresent()) {
-                            value = Optional.ofNullable(optional.get());
-                        }
-                    } else {
-                        value = Optional.ofNullable(arg);
-                    }
-
-                    value.ifPresent(v -> paramMap.put(queryParam.value(),
-                            String.valueOf(v)));
-                }
+    /***
+     * Infers the response type from the type argument of a generic return type, e.g. FakeUser for
+     * CompletableFuture&lt;FakeUser&gt; or List&lt;FakeUser&gt; for Observable&lt;List&lt;FakeUser&gt;&gt;.
+     */
+    private static Type typeArgument(final Type genericReturnType) {
+
+        if (genericReturnType instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) genericReturnType).getActualTypeArguments()[0];
+            if (argument instanceof WildcardType) {
+                argument = ((WildcardType) argument).getUpperBounds()[0];
+            }
+            if (argument instanceof Class || argument instanceof ParameterizedType
+                    || argument instanceof GenericArrayType) {
+                return argument;
             }
         }
-        return paramMap;
+        throw new IllegalStateException("Could not infer the response class from " + genericReturnType
+                + ", use the ResponseType annotation");
     }
 
-    private Map<String, String> getArgCookies(final Object[] args) {
-        Map<String, String> argCookies = new HashMap<>();
+    private static Class<?> rawClass(final Type type) {
 
-        for (int i = 0; i < parameters.length; i++) {
-            final Parameter parameter = parameters[i];
-            Cookie annotation = parameter.getAnnotation(Cookie.class);
-            if (annotation != null) {
-                argCookies.put(annotation.name(), String.valueOf(args[i]));
-            }
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return rawClass(((ParameterizedType) type).getRawType());
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0)
+                    .getClass();
         }
+        throw new IllegalStateException("Could not resolve the response class of " + type
+                + ", use the ResponseType annotation");
+    }
+
+    private static int[] toArray(List<Integer> indexes) {
+        return indexes.isEmpty() ? NONE : indexes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private String getRenderedPath(final Object[] args) {
+        return pathTemplate.render(args, pathSlots, new StringBuilder(64)).toString();
+    }
 
-        return argCookies;
+    /***
+     * Unwraps java.util and Guava {@link Optional} query values.
+     *
+     * @return the value to send, or null if the parameter should be omitted
+     */
+    private static Object unwrapQueryValue(final Object arg) {
+
+        if (arg instanceof Optional) {
+            return ((Optional<?>) arg).orElse(null);
+        } else if (arg instanceof com.google.common.base.Optional) {
+            return ((com.google.common.base.Optional<?>) arg).orNull();
+        }
+        return arg;
     }
 
     public Setter getSetter() {
@@ -241,64 +420,286 @@ public class MethodInfo {
         return setter;
     }
 
+    /***
+     * @return the setter for {@link HystrixObservableCommand}s, which defaults to semaphore isolation
+     */
+    public HystrixObservableCommand.Setter getObservableSetter() {
+
+        return observableSetter;
+    }
+
+    /***
+     * @return the raw class of the {@link #getGenericResponseType() response type}
+     */
     public Class<?> getResponseClass() {
 
         return responseClass;
     }
 
+    /***
+     * @return the full response type, resolved once from the method signature, e.g. List&lt;FakeUser&gt;
+     */
+    public Type getGenericResponseType() {
+
+        return genericResponseType;
+    }
+
+    /***
+     * @return the declared type of the {@link Body} parameter, or null if the method has none
+     */
+    public Type getBodyType() {
+
+        return bodyType;
+    }
+
     public boolean isObservable() {
 
         return isObservable;
     }
 
+    /***
+     * @return true if the method returns a {@link CompletableFuture} or {@link Future}
+     */
+    public boolean isFuture() {
+
+        return isFuture;
+    }
+
+    /***
+     * @return true if the elements of the array response are emitted one at a time
+     */
+    public boolean isStreaming() {
+
+        return isStreaming;
+    }
+
+    /***
+     * @return true if the response objects are never modified, so cache hits may share them
+     */
+    public boolean isImmutableResponse() {
+
+        return isImmutableResponse;
+    }
+
+    /***
+     * @return true if concurrent calls are collapsed into a call of the {@link #getBatchMethod() batch method}
+     */
+    public boolean isCollapsed() {
+
+        return collapse.isPresent();
+    }
+
+    public Collapse getCollapse() {
+
+        return collapse.orElse(null);
+    }
+
+    public Method getBatchMethod() {
+
+        return batchMethod;
+    }
+
+    public HystrixCollapser.Setter getCollapserSetter() {
+
+        return collapserSetter;
+    }
+
+    public HystrixObservableCollapser.Setter getObservableCollapserSetter() {
+
+        return observableCollapserSetter;
+    }
+
+    /***
+     * Renders the cache key from the arguments alone, without building the request, with the
+     * {@link CacheKeyStrategy} of the configuration.
+     *
+     * @param args the method arguments
+     * @return the cache key
+     */
     public String getCacheKey(Object[] args) {
-        if (cacheKeyGroup != null) {
-            return cacheKeyGroup + ":" + this.getRenderedPath(args);
+
+        return getCacheKey(args, Collections.emptySet());
+    }
+
+    /***
+     * Renders the cache key from the arguments alone, including the values of the request headers the
+     * response varies on.
+     *
+     * @param args the method arguments
+     * @param varyHeaders the names of the headers the response varies on, in lower case and sorted
+     * @return the cache key
+     */
+    public String getCacheKey(Object[] args, Collection<String> varyHeaders) {
+
+        final StringBuilder path = pathTemplate.render(args, pathSlots, new StringBuilder(64));
+
+        List<String[]> query = Collections.emptyList();
+        if (queryIndexes.length > 0) {
+            final List<String[]> params = new ArrayList<>();
+            forEachQueryParam(args, (name, value) -> params.add(new String[] { name, value }));
+            // Stable, so the values of a repeated parameter keep their order
+            params.sort((a, b) -> a[0].compareTo(b[0]));
+            query = params;
         }
 
-        return this.getRenderedPath(args);
+        List<String[]> headers = Collections.emptyList();
+        if (!varyHeaders.isEmpty()) {
+            headers = new ArrayList<>(varyHeaders.size());
+            for (String name : varyHeaders) {
+                final String value = getHeader(args, name);
+                if (value != null) {
+                    headers.add(new String[] { name, value });
+                }
+            }
+        }
+        return cacheKeyStrategy.getCacheKey(cacheKeyGroup, verb, path, query, headers);
     }
 
+    /***
+     * @return the group the Vary headers of the responses are recorded under:  the CacheKeyGroup, or the
+     *     verb and URI template when there is none
+     */
+    public String getCacheGroup() {
+
+        return cacheGroup;
+    }
+
+    /***
+     * @param args the method arguments
+     * @param name the header name, matched case insensitively
+     * @return the value of the request header, or null if the request does not send it
+     */
+    public String getHeader(Object[] args, String name) {
+
+        for (int i = 0; i < headerNames.length; i++) {
+            if (name.equalsIgnoreCase(headerNames[i])) {
+                return String.valueOf(args[headerIndexes[i]]);
+            }
+        }
+        for (int i = 0; i < staticHeaderNames.length; i++) {
+            if (name.equalsIgnoreCase(staticHeaderNames[i])) {
+                return staticHeaderValues[i];
+            }
+        }
+        return "Cookie".equalsIgnoreCase(name) ? renderCookies(args) : null;
+    }
+
+    /***
+     * @param args the method arguments
+     * @return the Cache-Control header of the request, or null if it has none
+     */
+    public String getCacheControl(Object[] args) {
+
+        if (cacheControlIndex >= 0 && args[cacheControlIndex] != null) {
+            return String.valueOf(args[cacheControlIndex]);
+        }
+        return staticCacheControl;
+    }
+
+    public Verb getVerb() {
+
+        return verb;
+    }
+
+    /***
+     * Calls the consumer with each query parameter to send, collections and arrays as repeated parameters
+     */
+    private void forEachQueryParam(final Object[] args, final BiConsumer<String, String> consumer) {
+
+        for (int i = 0; i < queryIndexes.length; i++) {
+            final Object value = unwrapQueryValue(args[queryIndexes[i]]);
+            if (value instanceof Iterable) {
+                for (Object element : (Iterable<?>) value) {
+                    consumer.accept(queryNames[i], String.valueOf(element));
+                }
+            } else if (value instanceof Object[]) {
+                for (Object element : (Object[]) value) {
+                    consumer.accept(queryNames[i], String.valueOf(element));
+                }
+            } else if (value != null) {
+                consumer.accept(queryNames[i], String.valueOf(value));
+            }
+        }
+    }
+
+    /***
+     * Serializes the body into a pooled buffer and copies it out once, rather than building a String
+     * that is encoded again when the request is written.
+     */
+    private byte[] writeBody(final Object body) throws Exception {
+
+        final PooledBuffer buffer = PooledBuffer.acquire();
+        try {
+            restAdapterConfig.getMessageSerializer().writeValue(body, buffer);
+            return buffer.copy();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /***
+     * @return the Cookie header of the static and parameter cookies, or null if there are none
+     */
+    private String renderCookies(Object[] args) {
+
+        if (cookieIndexes.length == 0) {
+            return staticCookies;
+        }
+
+        final StringBuilder cookies = new StringBuilder();
+        if (staticCookies != null) {
+            cookies.append(staticCookies);
+        }
+        for (int i = 0; i < cookieIndexes.length; i++) {
+            if (cookies.length() > 0) {
+                cookies.append(';');
+            }
+            cookies.append(cookieNames[i]).append('=').append(args[cookieIndexes[i]]);
+        }
+        return cookies.toString();
+    }
+
+    /***
+     * Renders the request of a call
+     *
+     * @param args the method arguments
+     * @return the request
+     * @throws IllegalArgumentException if the body cannot be serialized
+     */
     public HttpRequest toHttpRequest(Object[] args) {
 
         final Builder requestBuilder = HttpRequest.newBuilder()
-                .verb(HttpRequest.Verb.valueOf(this.http.method().toString()))
+                .verb(verb)
                 .uri(this.getRenderedPath(args));
 
-        this.getQueryParameters(args).forEach((k, v) -> {
-            requestBuilder.queryParams(k, v);
-        });
-
-        this.getHeaders(args).forEach((k, v) -> {
-            requestBuilder.header(k, v);
-        });
+        forEachQueryParam(args, requestBuilder::queryParams);
 
-        // Cookies
-        List<String> requestCookies = new ArrayList<>();
-        requestCookies.addAll(cookies);
-
-        requestCookies.addAll(this.getArgCookies(args).entrySet().stream()
-                .map(entry -> entry.getKey() + "=" + entry.getValue())
-                .collect(Collectors.toList()));
+        for (int i = 0; i < staticHeaderNames.length; i++) {
+            requestBuilder.header(staticHeaderNames[i], staticHeaderValues[i]);
+        }
+        for (int i = 0; i < headerIndexes.length; i++) {
+            requestBuilder.header(headerNames[i], String.valueOf(args[headerIndexes[i]]));
+        }
 
-        if (!requestCookies.isEmpty()) {
-            requestBuilder.header("Cookie",
-                    requestCookies.stream().collect(Collectors.joining(";")));
+        final String cookies = renderCookies(args);
+        if (cookies != null) {
+            requestBuilder.header("Cookie", cookies);
         }
 
         // Body
-        this.getBody(args).ifPresent(
-                t -> {
-                    try {
-                        requestBuilder.entity(restAdapterConfig
-                                .getMessageSerializer().writeValue(t));
-                    } catch (Exception e) {
-                        e.printStackTrace(); // /XXX: decide there is better
-                                             // exception handling
-                    }
-                });
+        if (bodyIndex >= 0 && args[bodyIndex] != null) {
+            try {
+                requestBuilder.entity(writeBody(args[bodyIndex]));
+                if (entityContentType != null) {
+                    requestBuilder.header("Content-Type", entityContentType);
+                }
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Could not serialize the request body "
+                        + args[bodyIndex].getClass().getName(), e);
+            }
+        }
 
         HttpRequest request = requestBuilder.build();
         return request;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpMethod;
+import io.reactivex.netty.pipeline.PipelineConfigurator;
+import io.reactivex.netty.pipeline.PipelineConfiguratorComposite;
+import io.reactivex.netty.protocol.http.client.HttpClientPipelineConfigurator;
+import io.reactivex.netty.protocol.http.client.HttpClientRequest;
+import io.reactivex.netty.protocol.http.client.HttpClientResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map.Entry;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+import com.kenzan.bowtie.RestAdapterConfig;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.client.http.HttpRequest;
+import com.netflix.client.http.HttpResponse;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.niws.client.http.CachedResponse;
+import com.netflix.ribbon.transport.netty.RibbonTransport;
+import com.netflix.ribbon.transport.netty.http.LoadBalancingHttpClient;
+import com.sun.jersey.api.uri.UriComponent;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.MessageBodyWorkers;
+
+/***
+ * <p>
+ * Non-blocking {@link HttpTransport} using the RxNetty based Ribbon transport.  Uses the same load balancer
+ * and client configuration as the named RestClient.
+ * </p>
+ *
+ * <p>
+ * The response body is aggregated as it arrives on the event loop, so no thread waits on the request, up to
+ * a maximum size past which the request fails.  The aggregated response is then emitted on a worker scheduler,
+ * {@link Schedulers#io()} by default, so that its deserialization and blocking cache writes do not hold up the
+ * event loop.
+ * </p>
+ *
+ * <p>
+ * The filters of the Jersey client, such as {@link com.kenzan.bowtie.log.LoggerFilter}, are not applied to
+ * requests executed by this transport.
+ * </p>
+ */
+public class NettyHttpTransport implements HttpTransport {
+
+    private static final String DECOMPRESSOR_HANDLER_NAME = "http-content-decompressor";
+
+    private final LoadBalancingHttpClient<ByteBuf, ByteBuf> httpClient;
+    private final MessageBodyWorkers workers;
+    private final boolean gzip;
+    private final Scheduler scheduler;
+    private final int maxResponseBytes;
+
+    public NettyHttpTransport(LoadBalancingHttpClient<ByteBuf, ByteBuf> httpClient,
+            MessageBodyWorkers workers, boolean gzip) {
+        this(httpClient, workers, gzip, Schedulers.io());
+    }
+
+    public NettyHttpTransport(LoadBalancingHttpClient<ByteBuf, ByteBuf> httpClient,
+            MessageBodyWorkers workers, boolean gzip, Scheduler scheduler) {
+        this(httpClient, workers, gzip, scheduler, RestAdapterConfig.DEFAULT_MAX_RESPONSE_BYTES);
+    }
+
+    /***
+     * @param httpClient the RxNetty client
+     * @param workers used to create the {@link HttpResponse}
+     * @param gzip request and decompress gzip encoded responses
+     * @param scheduler the scheduler responses are emitted on, off the event loop
+     * @param maxResponseBytes the largest response body aggregated, larger responses fail
+     */
+    public NettyHttpTransport(LoadBalancingHttpClient<ByteBuf, ByteBuf> httpClient,
+            MessageBodyWorkers workers, boolean gzip, Scheduler scheduler, int maxResponseBytes) {
+        this.httpClient = httpClient;
+        this.workers = workers;
+        this.gzip = gzip;
+        this.scheduler = scheduler;
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    /***
+     * Creates a transport sharing the load balancer and configuration of a named client.
+     *
+     * @param loadBalancer the load balancer of the named client
+     * @param clientConfig the configuration of the named client
+     * @param workers used to create the {@link HttpResponse}
+     * @param gzip request and decompress gzip encoded responses
+     * @return the transport
+     */
+    public static NettyHttpTransport create(ILoadBalancer loadBalancer, IClientConfig clientConfig,
+            MessageBodyWorkers workers, boolean gzip) {
+        return create(loadBalancer, clientConfig, workers, gzip, RestAdapterConfig.DEFAULT_MAX_RESPONSE_BYTES);
+    }
+
+    /***
+     * Creates a transport sharing the load balancer and configuration of a named client.
+     *
+     * @param loadBalancer the load balancer of the named client
+     * @param clientConfig the configuration of the named client
+     * @param workers used to create the {@link HttpResponse}
+     * @param gzip request and decompress gzip encoded responses
+     * @param maxResponseBytes the largest response body aggregated, larger responses fail
+     * @return the transport
+     */
+    public static NettyHttpTransport create(ILoadBalancer loadBalancer, IClientConfig clientConfig,
+            MessageBodyWorkers workers, boolean gzip, int maxResponseBytes) {
+
+        PipelineConfigurator<HttpClientResponse<ByteBuf>, HttpClientRequest<ByteBuf>> configurator =
+                RibbonTransport.DEFAULT_HTTP_PIPELINE_CONFIGURATOR;
+        if (gzip) {
+            configurator = new PipelineConfiguratorComposite<>(configurator,
+                    pipeline -> pipeline.addAfter(HttpClientPipelineConfigurator.HTTP_CODEC_HANDLER_NAME,
+                            DECOMPRESSOR_HANDLER_NAME, new HttpContentDecompressor()));
+        }
+
+        return new NettyHttpTransport(RibbonTransport.newHttpClient(configurator, loadBalancer, clientConfig),
+                workers, gzip, Schedulers.io(), maxResponseBytes);
+    }
+
+    @Override
+    public Observable<HttpResponse> execute(HttpRequest request) {
+
+        return Observable.defer(() -> httpClient.submit(toClientRequest(request)))
+                .flatMap(response -> response.getContent()
+                        .reduce(new ByteArrayOutputStream(), (out, content) -> {
+                            try {
+                                if (out.size() + content.readableBytes() > maxResponseBytes) {
+                                    throw new IOException("Response body of " + request.getUri()
+                                            + " is larger than " + maxResponseBytes + " bytes");
+                                }
+                                content.readBytes(out, content.readableBytes());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return out;
+                        })
+                        .map(out -> toHttpResponse(response, out.toByteArray())))
+                .observeOn(scheduler);
+    }
+
+    private HttpClientRequest<ByteBuf> toClientRequest(HttpRequest request) {
+
+        final StringBuilder uri = new StringBuilder(request.getUri().toString());
+        char separator = uri.indexOf("?") < 0 ? '?' : '&';
+        for (Entry<String, Collection<String>> param : request.getQueryParams().entrySet()) {
+            final String name = UriComponent.encode(param.getKey(), UriComponent.Type.QUERY_PARAM);
+            for (String value : param.getValue()) {
+                uri.append(separator).append(name).append('=')
+                        .append(UriComponent.encode(value, UriComponent.Type.QUERY_PARAM));
+                separator = '&';
+            }
+        }
+
+        final HttpClientRequest<ByteBuf> clientRequest = HttpClientRequest.create(
+                HttpMethod.valueOf(request.getVerb().name()), uri.toString());
+
+        request.getHeaders().forEach((name, values) -> values.forEach(value -> clientRequest.withHeader(name, value)));
+        if (gzip) {
+            clientRequest.withHeader("Accept-Encoding", "gzip");
+        }
+
+        final Object entity = request.getEntity();
+        if (entity instanceof byte[]) {
+            clientRequest.withContent((byte[]) entity);
+        } else if (entity != null) {
+            clientRequest.withContent(entity.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return clientRequest;
+    }
+
+    /***
+     * Wraps the aggregated response as is, it is only parsed for caching if the caller caches it
+     */
+    private HttpResponse toHttpResponse(HttpClientResponse<ByteBuf> response, byte[] body) {
+
+        final InBoundHeaders headers = new InBoundHeaders();
+        response.getHeaders().entries().forEach(header -> headers.add(header.getKey(), header.getValue()));
+
+        return CachedResponse.toHttpResponse(response.getStatus().code(), headers, new ByteArrayInputStream(body),
+                workers);
+    }
+}
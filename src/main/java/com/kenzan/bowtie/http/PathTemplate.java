@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.jersey.api.uri.UriComponent;
+
+/***
+ * <p>
+ * A URI template that has been split once into literal segments and variable slots.  Literals are
+ * encoded when the template is compiled, so rendering only has to encode the runtime values.
+ * </p>
+ *
+ * <p>
+ * Rendering produces the same output as <code>UriBuilder.fromPath(template).buildFromEncodedMap(values)</code>.
+ * </p>
+ */
+final class PathTemplate {
+
+    private final String template;
+    private final String[] literals;
+    private final String[] names;
+
+    private PathTemplate(String template, String[] literals, String[] names) {
+        this.template = template;
+        this.literals = literals;
+        this.names = names;
+    }
+
+    /***
+     * Splits the template into literals and variables.  A template with N variables has N+1 literals,
+     * the first and last of which may be empty.
+     *
+     * @param template the uri template, e.g. /user/{username}
+     * @return the compiled template
+     */
+    static PathTemplate compile(String template) {
+
+        final List<String> literals = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+
+        int start = 0;
+        int open;
+        while ((open = template.indexOf('{', start)) >= 0) {
+
+            int depth = 1;
+            int close = open + 1;
+            while (close < template.length() && depth > 0) {
+                final char c = template.charAt(close);
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    depth--;
+                }
+                close++;
+            }
+            if (depth > 0) {
+                throw new IllegalArgumentException("Unclosed template variable in " + template);
+            }
+
+            // Strip an optional regular expression, e.g. {id: [0-9]+}
+            String name = template.substring(open + 1, close - 1);
+            final int colon = name.indexOf(':');
+            if (colon >= 0) {
+                name = name.substring(0, colon);
+            }
+
+            literals.add(encodeLiteral(template.substring(start, open)));
+            names.add(name.trim());
+            start = close;
+        }
+        literals.add(encodeLiteral(template.substring(start)));
+
+        return new PathTemplate(template, literals.toArray(new String[literals.size()]),
+                names.toArray(new String[names.size()]));
+    }
+
+    private static String encodeLiteral(String literal) {
+        return literal.isEmpty() ? literal : UriComponent.contextualEncode(literal, UriComponent.Type.PATH);
+    }
+
+    /***
+     * @return the names of the variables in the order they appear in the template
+     */
+    String[] getNames() {
+        return names.clone();
+    }
+
+    int getSlotCount() {
+        return names.length;
+    }
+
+    /***
+     * Renders the template into the given builder.
+     *
+     * @param args the method arguments
+     * @param argIndexes for each slot, the index into args of its value, or -1 if it has none
+     * @param sb the builder to append to
+     * @return the builder
+     */
+    StringBuilder render(Object[] args, int[] argIndexes, StringBuilder sb) {
+
+        for (int i = 0; i < names.length; i++) {
+            sb.append(literals[i]);
+
+            final Object value = argIndexes[i] < 0 ? null : args[argIndexes[i]];
+            if (value == null) {
+                throw new IllegalArgumentException("The template variable, " + names[i]
+                        + ", has no value");
+            }
+            sb.append(UriComponent.contextualEncode(value.toString(), UriComponent.Type.PATH));
+        }
+
+        return sb.append(literals[names.length]);
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
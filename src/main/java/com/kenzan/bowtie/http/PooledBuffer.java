@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/***
+ * <p>
+ * Growable byte buffer recycled through a small, bounded pool, used to stage request and response bodies
+ * without allocating a new buffer for every call.  {@link #copy()} copies the bytes once, to their exact size.
+ * </p>
+ *
+ * <p>
+ * A buffer must not be used after it has been {@link #release() released}.
+ * </p>
+ */
+final class PooledBuffer extends ByteArrayOutputStream {
+
+    private static final int POOL_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final int MAX_POOLED_CAPACITY = 4 * 1024 * 1024;
+    private static final BlockingQueue<PooledBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private PooledBuffer() {
+        super(INITIAL_CAPACITY);
+    }
+
+    /***
+     * @return an empty buffer from the pool, or a new one if the pool is empty
+     */
+    static PooledBuffer acquire() {
+        final PooledBuffer pooled = POOL.poll();
+        return pooled == null ? new PooledBuffer() : pooled;
+    }
+
+    /***
+     * @return a copy of the bytes written
+     */
+    byte[] copy() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    /***
+     * Returns the buffer to the pool.  Buffers that grew too large, or that do not fit in the pool,
+     * are left to the garbage collector.
+     */
+    void release() {
+        if (buf.length <= MAX_POOLED_CAPACITY) {
+            reset();
+            POOL.offer(this);
+        }
+    }
+}
@@ -0,0 +1,472 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+import com.kenzan.bowtie.RestAdapterConfig;
+import com.kenzan.bowtie.cache.CacheControl;
+import com.kenzan.bowtie.cache.RestCache;
+import com.kenzan.bowtie.cache.RestCachingPolicy;
+import com.kenzan.bowtie.serializer.MessageSerializer;
+import com.netflix.client.http.HttpRequest;
+import com.netflix.client.http.HttpResponse;
+import com.netflix.hystrix.HystrixObservableCommand;
+import com.netflix.niws.client.http.CachedResponse;
+import com.sun.jersey.spi.MessageBodyWorkers;
+
+/***
+ * <p>
+ * Executes a client method call: checks the {@link RestCache}, sends the request using an {@link HttpTransport}
+ * and deserializes the response.  Stale cached responses with a validator are revalidated with a conditional
+ * request, or served while they are refreshed in the background when the response allowed
+ * stale-while-revalidate.  Other stale responses are misses, served only if the origin fails within their
+ * stale-if-error window.  Concurrent cache misses of the same key share a single request.  Used by both
+ * {@link JerseyHystrixCommand} and {@link JerseyHystrixObservableCommand}.
+ * </p>
+ */
+public class RequestExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestExecutor.class);
+
+    private final HttpTransport transport;
+    private final RestAdapterConfig restAdapterConfig;
+    private final MessageBodyWorkers workers;
+    private static final int NOT_MODIFIED = 304;
+
+    private final RestCachingPolicy cachingPolicy = new RestCachingPolicy();
+    private final Map<String, Boolean> refreshing = new ConcurrentHashMap<>();
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    public RequestExecutor(final HttpTransport transport,
+            final RestAdapterConfig config, final MessageBodyWorkers workers) {
+        this.transport = transport;
+        this.restAdapterConfig = config;
+        this.workers = workers;
+    }
+
+    /***
+     * Creates a cold {@link Observable} that executes the call when subscribed to.  With a blocking
+     * transport all of the work happens on the subscribing thread.
+     *
+     * @param methodInfo the method metadata
+     * @param args the method arguments
+     * @return an {@link Observable} emitting the single response object
+     */
+    public Observable<Object> execute(final MethodInfo methodInfo, final Object[] args) {
+
+        return execute(methodInfo, args, null);
+    }
+
+    /***
+     * Creates a cold {@link Observable} that executes the call when subscribed to, looking the response up
+     * in responses already got from the {@link RestCache} rather than in the cache itself.
+     *
+     * @param methodInfo the method metadata
+     * @param args the method arguments
+     * @param prefetched the cached responses by cache key, see {@link #prefetch(List, List)}, or null to
+     *     look the response up in the cache
+     * @return an {@link Observable} emitting the single response object
+     */
+    public Observable<Object> execute(final MethodInfo methodInfo, final Object[] args,
+            final Map<String, CachedResponse> prefetched) {
+
+        return Observable.defer(() -> {
+
+            final Optional<RestCache> cache = Optional.ofNullable(restAdapterConfig
+                    .getRestCache());
+
+            // The request is only built on a miss, or to refresh a hit
+            final boolean isRequestCacheable = cache.isPresent() && isCacheable(methodInfo, args);
+            final String cacheKey = isRequestCacheable ? getCacheKey(methodInfo, args) : null;
+            CachedResponse fallback = null;
+            if (isRequestCacheable) {
+
+                final Optional<CachedResponse> cachedResponse = prefetched == null
+                        ? cache.get().get(cacheKey)
+                        : Optional.ofNullable(prefetched.get(cacheKey));
+
+                if (cachedResponse.isPresent()) {
+                    final CachedResponse cached = cachedResponse.get();
+                    if (cached.isStaleWhileRevalidate() || isRefreshAhead(cached)) {
+                        refreshInBackground(methodInfo, args, cached, cache.get(), cacheKey);
+                        return attempt(() -> fromCache(methodInfo, cached, cache.get()));
+                    }
+                    if (!cached.isStale()) {
+                        return attempt(() -> fromCache(methodInfo, cached, cache.get()));
+                    }
+                    if (cached.isRevalidatable()) {
+                        return staleIfError(revalidate(methodInfo, args, methodInfo.toHttpRequest(args), cached,
+                                cache.get(), cacheKey), methodInfo, cached, cache.get(), cacheKey);
+                    }
+                    // A stale response without a validator is a miss, only served if the origin fails
+                    fallback = cached;
+                }
+            }
+
+            final HttpRequest request = methodInfo.toHttpRequest(args);
+            final Observable<Object> call = transport.execute(request).flatMap(
+                    httpResponse -> attempt(() -> fromResponse(methodInfo, args, httpResponse,
+                            isRequestCacheable ? cache : Optional.empty(), cacheKey)));
+
+            // Concurrent misses of the same key and type share one request, the callers that waited on it
+            // then deserialize their own copy of the cached response, or make their own call if it wasn't cached.
+            // Until the Vary headers of the group are known, the key may not tell apart the variants.
+            if (isRequestCacheable && !HttpResponse.class.equals(methodInfo.getResponseClass())
+                    && cachingPolicy.isVaryKnown(methodInfo.getCacheGroup())) {
+                final Observable<Object> follow = Observable.defer(() -> {
+                    final Optional<CachedResponse> cached = cache.get().get(cacheKey);
+                    return cached.isPresent() && !cached.get().isStale()
+                            ? attempt(() -> fromCache(methodInfo, cached.get(), cache.get()))
+                            : call;
+                });
+                return staleIfError(singleFlight.execute(cacheKey + " "
+                        + methodInfo.getGenericResponseType().getTypeName(), call, follow),
+                        methodInfo, fallback, cache.get(), cacheKey);
+            }
+            return isRequestCacheable ? staleIfError(call, methodInfo, fallback, cache.get(), cacheKey) : call;
+        });
+    }
+
+    /***
+     * Falls back to the stale cached response if the call fails while the response allows stale-if-error
+     *
+     * @param call the call to the origin
+     * @param methodInfo the method metadata
+     * @param cached the stale cached response, or null
+     * @param cache the cache
+     * @param cacheKey the cache key
+     * @return the call, with the fallback if any
+     */
+    private Observable<Object> staleIfError(Observable<Object> call, MethodInfo methodInfo,
+            CachedResponse cached, RestCache cache, String cacheKey) {
+
+        if (cached == null || !cached.isStaleIfError()) {
+            return call;
+        }
+        return call.onErrorResumeNext(error -> {
+            LOGGER.warn("Serving stale response for {}", cacheKey, error);
+            return attempt(() -> fromCache(methodInfo, cached, cache));
+        });
+    }
+
+    /***
+     * Gets the cached responses of the cacheable calls among the given ones with a single
+     * {@link RestCache#getAll(Collection)}.
+     *
+     * @param methodInfos the method metadata of the calls
+     * @param args the arguments of the calls
+     * @return the cached responses by cache key
+     */
+    public Map<String, CachedResponse> prefetch(final List<MethodInfo> methodInfos, final List<Object[]> args) {
+
+        final RestCache cache = restAdapterConfig.getRestCache();
+        if (cache == null) {
+            return Collections.emptyMap();
+        }
+
+        final Set<String> cacheKeys = new LinkedHashSet<>();
+        for (int i = 0; i < methodInfos.size(); i++) {
+            final MethodInfo methodInfo = methodInfos.get(i);
+            if (!methodInfo.isStreaming() && !methodInfo.isCollapsed() && isCacheable(methodInfo, args.get(i))) {
+                cacheKeys.add(getCacheKey(methodInfo, args.get(i)));
+            }
+        }
+        return cacheKeys.isEmpty() ? Collections.emptyMap() : cache.getAll(cacheKeys);
+    }
+
+    /***
+     * Renders the cache key, including the values of the request headers the responses of the method are
+     * known to vary on
+     */
+    private String getCacheKey(MethodInfo methodInfo, Object[] args) {
+
+        return methodInfo.getCacheKey(args, cachingPolicy.getVaryHeaders(methodInfo.getCacheGroup()));
+    }
+
+    /***
+     * Renders the key to cache a response under:  the key it was looked up with, unless it varies on
+     * request headers.  The headers, if any, are recorded for the lookups of its cache group.
+     */
+    private String getCacheKey(MethodInfo methodInfo, Object[] args, HttpResponse httpResponse,
+            String cacheKey) {
+
+        final Set<String> vary = cachingPolicy.getVary(httpResponse);
+        final Set<String> recorded = cachingPolicy.recordVary(methodInfo.getCacheGroup(), vary);
+        return vary.isEmpty() ? cacheKey : methodInfo.getCacheKey(args, recorded);
+    }
+
+    private boolean isCacheable(MethodInfo methodInfo, Object[] args) {
+
+        return cachingPolicy.isCachable(methodInfo.getVerb(), methodInfo.getCacheControl(args));
+    }
+
+    /***
+     * @return true if the response is fresh but past the refresh ahead fraction of its TTL
+     */
+    private boolean isRefreshAhead(CachedResponse cached) {
+
+        final double refreshAhead = restAdapterConfig.getRefreshAhead();
+        return refreshAhead > 0 && cached.getTTL() > 0 && !cached.isStale()
+                && cached.getAge() >= refreshAhead * cached.getTTL() * 1000;
+    }
+
+    /***
+     * Refreshes the cached response on the refresh executor, unless a refresh of the same key is already
+     * running or the executor rejects it.  The refresh runs in a Hystrix command of the method, so it is
+     * bounded by its timeout and circuit breaker.  Failures are logged, the cached response is left in place.
+     */
+    private void refreshInBackground(MethodInfo methodInfo, Object[] args,
+            CachedResponse cached, RestCache cache, String cacheKey) {
+
+        if (refreshing.putIfAbsent(cacheKey, Boolean.TRUE) != null) {
+            return;
+        }
+
+        final HttpRequest request;
+        try {
+            request = methodInfo.toHttpRequest(args);
+        } catch (IllegalArgumentException e) {
+            refreshing.remove(cacheKey);
+            LOGGER.warn("Failed to refresh {}", cacheKey, e);
+            return;
+        }
+        final Observable<Object> refresh = cached.isRevalidatable()
+                ? revalidate(methodInfo, args, request, cached, cache, cacheKey)
+                : transport.execute(request).flatMap(
+                        httpResponse -> attempt(() -> fromResponse(methodInfo, args, httpResponse,
+                                Optional.of(cache), cacheKey)));
+        final HystrixObservableCommand<Object> command = new HystrixObservableCommand<Object>(
+                methodInfo.getObservableSetter()) {
+            @Override
+            protected Observable<Object> construct() {
+                return refresh;
+            }
+        };
+        try {
+            restAdapterConfig.getRefreshExecutor().execute(() -> {
+                try {
+                    command.toObservable().toBlocking().single();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Failed to refresh {}", cacheKey, e);
+                } finally {
+                    refreshing.remove(cacheKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Skipped refresh of {}", cacheKey);
+            refreshing.remove(cacheKey);
+        }
+    }
+
+    /***
+     * Sends the request conditionally on the validators of the stale response.  A 304 Not Modified refreshes
+     * the cached response, whose body is then used; any other response is handled as a cache miss.
+     */
+    private Observable<Object> revalidate(MethodInfo methodInfo, Object[] args, HttpRequest request,
+            CachedResponse cached, RestCache cache, String cacheKey) {
+
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(request);
+        if (cached.getETag() != null) {
+            builder.header("If-None-Match", cached.getETag());
+        }
+        if (cached.getLastModified() != null) {
+            builder.header("If-Modified-Since", cached.getLastModified());
+        }
+
+        return transport.execute(builder.build()).flatMap(httpResponse -> {
+            if (httpResponse.getStatus() == NOT_MODIFIED) {
+                return attempt(() -> {
+                    try (final HttpResponse notModified = httpResponse) {
+                        final CachedResponse refreshed = cached.revalidated(notModified.getHeaders());
+                        cache.set(cacheKey, refreshed);
+                        return fromCache(methodInfo, refreshed, cache);
+                    }
+                });
+            }
+            return attempt(() -> fromResponse(methodInfo, args, httpResponse, Optional.of(cache), cacheKey));
+        });
+    }
+
+    /***
+     * Creates a cold {@link Observable} that executes the call when subscribed to and emits the elements
+     * of the array response as they are parsed.  The response is closed when the stream completes, fails
+     * or is unsubscribed.  Streams bypass the {@link RestCache}.
+     *
+     * @param methodInfo the method metadata
+     * @param args the method arguments
+     * @return an {@link Observable} emitting the response elements
+     */
+    public Observable<Object> stream(final MethodInfo methodInfo, final Object[] args) {
+
+        return Observable.defer(() -> transport.execute(methodInfo.toHttpRequest(args)))
+                .concatMap(response -> Observable.using(
+                        () -> response,
+                        httpResponse -> attempt(() -> serializer(httpResponse.getHeaders()).readValues(
+                                methodInfo.getResponseClass(), httpResponse.getInputStream()))
+                                .concatMap(iterator -> Observable.from(() -> iterator)),
+                        HttpResponse::close));
+    }
+
+    private Object fromCache(MethodInfo methodInfo, CachedResponse cachedResponse, RestCache cache)
+            throws Exception {
+
+        // XXX Check to see if need to convert to a HttpResponse
+        if (HttpResponse.class.equals(methodInfo.getResponseClass())) {
+            return cachedResponse.toHttpResponse(workers);
+        }
+
+        // A value kept for another method of the same type is only shared if this one may share it too
+        final Type type = methodInfo.getGenericResponseType();
+        final boolean isValueCaching = isValueCaching(methodInfo, cache);
+        final Object value = isValueCaching ? cachedResponse.getValue(type) : null;
+        if (value != null) {
+            return value;
+        }
+
+        final Object object;
+        if (cachedResponse.isCompressed() || cachedResponse.isDirect()) {
+            // Inflate, or read off-heap, straight into the deserializer
+            try (final InputStream body = cachedResponse.openBody()) {
+                object = serializer(cachedResponse.getHeaders()).readValue(type, body);
+            }
+        } else {
+            final byte[] cachedBytes = cachedResponse.getStoredBytes();
+            object = serializer(cachedResponse.getHeaders()).readValue(type, cachedBytes, 0, cachedBytes.length);
+        }
+        if (isValueCaching) {
+            cachedResponse.setValue(type, object);
+        }
+        return object;
+    }
+
+    private Object fromResponse(MethodInfo methodInfo, Object[] args, HttpResponse response,
+            Optional<RestCache> cache, String cacheKey) throws Exception {
+
+        try (final HttpResponse httpResponse = response) {
+
+            final Object object;
+            if (HttpResponse.class.equals(methodInfo.getResponseClass())) {
+                object = httpResponse;
+
+            } else {
+
+                // XXX: Need to determine how to handle errors
+                final CacheControl cacheControl = cache.isPresent()
+                        ? CacheControl.of(httpResponse.getHeaders()) : null;
+                if (cache.isPresent()
+                        && cachingPolicy.isCachable(httpResponse, cacheControl)
+                        && !exceedsCacheableSize(httpResponse)) {
+
+                    // Deserialize from the network while copying the body for the cache
+                    final TeeInputStream inputStream = new TeeInputStream(
+                            httpResponse.getInputStream(), restAdapterConfig.getMaxCacheableBytes());
+                    try {
+                        object = serializer(httpResponse.getHeaders()).readValue(
+                                methodInfo.getGenericResponseType(), inputStream);
+                        inputStream.close();
+
+                        final byte[] cachedBytes = inputStream.toByteArray();
+                        if (cachedBytes != null) {
+                            final CachedResponse cachedResponse = CachedResponse.createResponse(
+                                    httpResponse.getStatus(), httpResponse.getHeaders(), cachedBytes,
+                                    restAdapterConfig.getCacheCompressionThreshold(), cacheControl);
+                            if (isValueCaching(methodInfo, cache.get())) {
+                                cachedResponse.setValue(methodInfo.getGenericResponseType(), object);
+                            }
+                            cache.get().set(getCacheKey(methodInfo, args, httpResponse, cacheKey), cachedResponse);
+                        }
+                    } finally {
+                        inputStream.release();
+                    }
+                } else {
+                    object = serializer(httpResponse.getHeaders()).readValue(
+                            methodInfo.getGenericResponseType(), httpResponse.getInputStream());
+                }
+            }
+
+            return object;
+        }
+    }
+
+    /***
+     * @return true if the deserialized body is kept with the cached response, so hits share it
+     */
+    private static boolean isValueCaching(MethodInfo methodInfo, RestCache cache) {
+
+        return methodInfo.isImmutableResponse() || cache.isValueCaching();
+    }
+
+    /***
+     * @return true if the Content-Length header says the body is larger than the cacheable size, in which
+     *     case it is not buffered at all
+     */
+    private boolean exceedsCacheableSize(HttpResponse httpResponse) {
+
+        final String length = firstHeader(httpResponse.getHeaders(), "Content-Length");
+        if (length == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(length.trim()) > restAdapterConfig.getMaxCacheableBytes();
+        } catch (NumberFormatException e) {
+            // The size is unknown, the bounded tee stops caching the body if it is too large
+            LOGGER.debug("Invalid Content-Length {}", length);
+            return false;
+        }
+    }
+
+    /***
+     * @return the serializer for the Content-Type of the response
+     */
+    private MessageSerializer serializer(Map<String, Collection<String>> headers) {
+
+        return restAdapterConfig.getMessageSerializer().forContentType(firstHeader(headers, "Content-Type"));
+    }
+
+    private static String firstHeader(Map<String, Collection<String>> headers, String name) {
+
+        return headers.entrySet().stream()
+                .filter(header -> name.equalsIgnoreCase(header.getKey()))
+                .flatMap(header -> header.getValue().stream())
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static <T> Observable<T> attempt(Callable<T> callable) {
+        try {
+            return Observable.just(callable.call());
+        } catch (Exception e) {
+            return Observable.error(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import rx.Observable;
+
+import com.netflix.client.http.HttpRequest;
+import com.netflix.client.http.HttpResponse;
+import com.netflix.niws.client.http.RestClient;
+
+/***
+ * <p>
+ * {@link HttpTransport} using the blocking Ribbon {@link RestClient}.  The request is executed on the subscribing
+ * thread.
+ * </p>
+ */
+public class RestClientTransport implements HttpTransport {
+
+    private final RestClient restClient;
+
+    public RestClientTransport(RestClient restClient) {
+        this.restClient = restClient;
+    }
+
+    @Override
+    public Observable<HttpResponse> execute(HttpRequest request) {
+        return Observable.defer(() -> {
+            try {
+                return Observable.just(restClient.executeWithLoadBalancer(request));
+            } catch (Exception e) {
+                return Observable.error(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.Observable;
+import rx.subjects.AsyncSubject;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/***
+ * <p>
+ * Shares one execution between concurrent calls with the same key.  The first caller executes the call,
+ * callers arriving before it completes wait for it, then get their own result from their follow up call,
+ * e.g. a cache lookup, so that they never share a mutable response object.  Errors of the call are shared.
+ * Coalesced callers are counted in the bowtie.singleFlight.coalesced Servo counter.
+ * </p>
+ */
+class SingleFlight {
+
+    private static final Counter COALESCED = new BasicCounter(
+            MonitorConfig.builder("bowtie.singleFlight.coalesced").build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(COALESCED);
+    }
+
+    private final Map<String, Observable<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /***
+     * Subscribes to the call unless one with the same key is in flight.  The call runs to completion
+     * even if its first caller unsubscribes, so that the callers waiting on it are not left hanging.
+     *
+     * @param key the key of the call, e.g. the cache key and response type
+     * @param call the cold call
+     * @param follow the cold call of the callers that waited on another, once it has completed
+     * @return an {@link Observable} emitting the last item of the call, or of the follow up call
+     */
+    Observable<Object> execute(String key, Observable<Object> call, Observable<Object> follow) {
+
+        final AsyncSubject<Object> subject = AsyncSubject.create();
+        final Observable<Object> existing = inFlight.putIfAbsent(key, subject);
+        if (existing != null) {
+            COALESCED.increment();
+            return existing.ignoreElements().concatWith(follow);
+        }
+
+        // Removed before the result is published, later callers go through the cache again
+        call.doOnTerminate(() -> inFlight.remove(key, subject)).subscribe(subject);
+        return subject;
+    }
+
+    /***
+     * @return the number of calls that have waited on another call, across all clients
+     */
+    static long getCoalescedCount() {
+        return COALESCED.getValue().longValue();
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/***
+ * <p>
+ * InputStream that copies the bytes read from a response body into a pooled buffer, so the body can be
+ * deserialized straight from the network and cached afterwards without reading it into memory first.
+ * Copying stops, and the buffer is returned to the pool, once more than the limit has been read.
+ * </p>
+ *
+ * <p>
+ * Not thread safe.  {@link #release()} must be called to return the buffer to the pool.
+ * </p>
+ */
+final class TeeInputStream extends FilterInputStream {
+
+    private static final int SCRATCH_SIZE = 8192;
+
+    private final int limit;
+    private PooledBuffer buffer;
+    private boolean closed;
+
+    TeeInputStream(final InputStream in, final int limit) {
+        super(in);
+        this.limit = limit;
+        this.buffer = PooledBuffer.acquire();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0 && buffer != null) {
+            buffer.write(b);
+            checkLimit();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = super.read(b, off, len);
+        if (n > 0 && buffer != null) {
+            if (buffer.size() + n > limit) {
+                release();
+            } else {
+                buffer.write(b, off, n);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // Read rather than skip so the skipped bytes are copied
+        final byte[] skipped = new byte[(int) Math.min(n, SCRATCH_SIZE)];
+        return Math.max(read(skipped, 0, skipped.length), 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /***
+     * @return a copy of the bytes read, or null if the body was larger than the limit
+     */
+    byte[] toByteArray() {
+        return buffer == null ? null : buffer.copy();
+    }
+
+    /***
+     * Reads the rest of the body, which the deserializer may have left unread, so the copy is complete,
+     * then closes the body.  The copy stays available until {@link #release()}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            final byte[] scratch = new byte[SCRATCH_SIZE];
+            while (buffer != null && read(scratch, 0, scratch.length) != -1) {
+                // copy only
+            }
+            super.close();
+        }
+    }
+
+    /***
+     * Returns the buffer to the pool.
+     */
+    void release() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
+    private void checkLimit() {
+        if (buffer.size() > limit) {
+            release();
+        }
+    }
+}
@@ -112,9 +112,22 @@ public class LoggerFilter extends ClientFilter {
                 });
 
         Optional.ofNullable(request.getEntity()).ifPresent(
-                e -> sb.append("Body: " + e));
+                e -> sb.append("Body: " + (e instanceof byte[] ? render((byte[]) e, request) : e)));
 
         LOGGER.debug(sb.toString());
     }
 
+    /***
+     * Renders textual bodies as UTF-8, and only the size of binary ones.
+     */
+    private String render(byte[] body, ClientRequest request) {
+
+        final Object contentType = request.getHeaders().getFirst("Content-Type");
+        final String type = contentType == null ? "" : contentType.toString().toLowerCase();
+        if (type.isEmpty() || type.contains("json") || type.contains("xml") || type.startsWith("text")) {
+            return new String(body, Charsets.UTF_8);
+        }
+        return "[" + body.length + " bytes " + type + "]";
+    }
+
 }
@@ -16,42 +16,156 @@
 package com.kenzan.bowtie.serializer;
 
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
 
 /***
  * <p>
- * {@link MessageSerializer} for serializing Jackson objects
+ * {@link MessageSerializer} for serializing Jackson objects.  The {@link ObjectReader} and
+ * {@link ObjectWriter} for each class, and for each generic type, are created once and kept in a
+ * registry, so the ObjectMapper must be fully configured before first use.
+ * </p>
+ *
+ * <p>
+ * Readers and writers are built with their root (de)serializer already resolved, and {@link #prepare(Type)}
+ * builds them when the client is created, so the first request does not pay for type introspection.
  * </p>
  */
 public class JacksonMessageSerializer implements MessageSerializer {
 
+    public static final String CONTENT_TYPE = "application/json";
+
     private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final Map<Type, ObjectReader> typeReaders = new ConcurrentHashMap<>();
+    private final Map<Type, ObjectWriter> typeWriters = new ConcurrentHashMap<>();
 
     public JacksonMessageSerializer(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
     }
 
     public JacksonMessageSerializer() {
-        this(new ObjectMapper());
+        this(configure(new ObjectMapper()));
+    }
+
+    /***
+     * Applies the default configuration: JAXB annotations, ignore unknown properties and case insensitive
+     * property names.
+     *
+     * @param objectMapper the mapper, for any data format
+     * @return the mapper
+     */
+    protected static ObjectMapper configure(ObjectMapper objectMapper) {
         objectMapper.registerModule(new JaxbAnnotationModule());
         objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
         objectMapper.configure(
                 MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
+        return objectMapper;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
     }
 
     @Override
     public Object readValue(Class<?> clazz, InputStream inputStream)
             throws Exception {
-        return objectMapper.reader(clazz).readValue(inputStream);
+        return reader(clazz).readValue(inputStream);
+    }
+
+    @Override
+    public Object readValue(Class<?> clazz, byte[] bytes, int offset, int length)
+            throws Exception {
+        return reader(clazz).readValue(bytes, offset, length);
+    }
+
+    /***
+     * Reads a message of a generic type, e.g. List&lt;FakeUser&gt;.  The type may be a {@link JavaType}.
+     */
+    @Override
+    public Object readValue(Type type, InputStream inputStream)
+            throws Exception {
+        return reader(type).readValue(inputStream);
+    }
+
+    @Override
+    public Object readValue(Type type, byte[] bytes, int offset, int length)
+            throws Exception {
+        return reader(type).readValue(bytes, offset, length);
     }
 
+    @Override
+    public void prepare(Type type) {
+        reader(type);
+        writer(type);
+    }
+
+    /***
+     * Parses the elements with a {@link com.fasterxml.jackson.databind.MappingIterator}, which unwraps a
+     * root level array.
+     */
+    @Override
+    public Iterator<Object> readValues(Class<?> clazz, InputStream inputStream)
+            throws Exception {
+        return reader(clazz).readValues(inputStream);
+    }
+
+    /***
+     * Writes the text of textual formats directly, binary formats such as CBOR go through their bytes
+     */
     @Override
     public String writeValue(Object object) throws Exception {
-        return objectMapper.writeValueAsString(object);
+        if (objectMapper.getFactory().canHandleBinaryNatively()) {
+            return MessageSerializer.super.writeValue(object);
+        }
+        return writer(object == null ? Object.class : object.getClass()).writeValueAsString(object);
+    }
+
+    @Override
+    public void writeValue(Object object, OutputStream outputStream) throws Exception {
+        writer(object == null ? Object.class : object.getClass()).writeValue(outputStream, object);
+    }
+
+    private ObjectReader reader(Class<?> clazz) {
+        return readers.computeIfAbsent(clazz, objectMapper::readerFor);
+    }
+
+    private ObjectWriter writer(Class<?> clazz) {
+        return writers.computeIfAbsent(clazz, c -> objectMapper.writerFor(c)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+    }
+
+    private ObjectReader reader(Type type) {
+        if (type instanceof Class) {
+            return reader((Class<?>) type);
+        }
+        return typeReaders.computeIfAbsent(type, t -> objectMapper.readerFor(javaType(t)));
+    }
+
+    private ObjectWriter writer(Type type) {
+        if (type instanceof Class) {
+            return writer((Class<?>) type);
+        }
+        return typeWriters.computeIfAbsent(type, t -> objectMapper.writerFor(javaType(t))
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+    }
+
+    private JavaType javaType(Type type) {
+        return type instanceof JavaType ? (JavaType) type : objectMapper.getTypeFactory().constructType(type);
     }
 
 }
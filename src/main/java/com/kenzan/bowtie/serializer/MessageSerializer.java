@@ -15,17 +15,154 @@
  */
 package com.kenzan.bowtie.serializer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharConversionException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.google.common.reflect.TypeToken;
 
 /***
  * <p> 
  * Interface for serializing messages
  * </p>
+ *
+ * <p>
+ * Messages are written to an {@link OutputStream} and read from a stream or a byte[] slice.  Implementations
+ * write messages with {@link #writeValue(Object, OutputStream)}, their String form {@link #writeValue(Object)}
+ * defaults to its UTF-8 text.
+ * </p>
  */
 public interface MessageSerializer {
 
-    
-    String writeValue(Object object) throws Exception;
+    /***
+     * @return the media type written by this serializer, sent as the Content-Type of request bodies, or null
+     *     to leave it unset
+     */
+    default String getContentType() {
+        return null;
+    }
+
+    /***
+     * @return the Accept header sent with requests, by default the {@link #getContentType() content type}
+     */
+    default String getAccept() {
+        return getContentType();
+    }
+
+    /***
+     * Selects the serializer for a response body.
+     *
+     * @param contentType the Content-Type of the response, may be null
+     * @return the serializer to read the body with, by default this one
+     */
+    default MessageSerializer forContentType(String contentType) {
+        return this;
+    }
+
+    /***
+     * Writes the String form of the message.  Defaults to the bytes written by
+     * {@link #writeValue(Object, OutputStream)} decoded as UTF-8.
+     *
+     * @param object the message
+     * @return the message text
+     * @throws CharConversionException if the serializer writes a binary format, whose messages have no String form
+     */
+    default String writeValue(Object object) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeValue(object, outputStream);
+        try {
+            return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(outputStream.toByteArray()))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            throw new CharConversionException(getClass().getSimpleName()
+                    + " writes binary messages, they have no String form");
+        }
+    }
+
+    /***
+     * Writes the message to the stream, leaving it open.
+     *
+     * @param object the message
+     * @param outputStream the stream to write to
+     */
+    void writeValue(Object object, OutputStream outputStream) throws Exception;
 
     Object readValue(Class<?> clazz, InputStream inputStream) throws Exception;
+
+    /***
+     * Reads the message from a slice of a byte array, e.g. a cached body.
+     *
+     * @param clazz the message class
+     * @param bytes the buffer
+     * @param offset the offset of the message in the buffer
+     * @param length the length of the message
+     * @return the message
+     */
+    default Object readValue(Class<?> clazz, byte[] bytes, int offset, int length) throws Exception {
+        return readValue(clazz, new ByteArrayInputStream(bytes, offset, length));
+    }
+
+    /***
+     * Reads a message of a generic type, e.g. List&lt;FakeUser&gt;.  By default the message is read as its raw
+     * class, e.g. List, the shipped serializers override it to read the type arguments too.
+     *
+     * @param type the message type
+     * @param inputStream the body
+     * @return the message
+     */
+    default Object readValue(Type type, InputStream inputStream) throws Exception {
+        return readValue(TypeToken.of(type).getRawType(), inputStream);
+    }
+
+    /***
+     * Reads a message of a generic type from a slice of a byte array.
+     *
+     * @param type the message type
+     * @param bytes the buffer
+     * @param offset the offset of the message in the buffer
+     * @param length the length of the message
+     * @return the message
+     */
+    default Object readValue(Type type, byte[] bytes, int offset, int length) throws Exception {
+        if (type instanceof Class) {
+            return readValue((Class<?>) type, bytes, offset, length);
+        }
+        return readValue(type, new ByteArrayInputStream(bytes, offset, length));
+    }
+
+    /***
+     * <p>
+     * Hint that messages of the given type will be read or written, so that the serializer can build what
+     * it needs up front rather than on the first request.  Called for each client method when the client
+     * is created.  Does nothing by default.
+     * </p>
+     *
+     * @param type the message type
+     */
+    default void prepare(Type type) {
+    }
+
+    /***
+     * <p>
+     * Reads the elements of an array body one at a time.  The default implementation reads the whole
+     * array; serializers that can parse incrementally should override it.
+     * </p>
+     *
+     * @param clazz the element class
+     * @param inputStream the body
+     * @return an iterator over the elements
+     */
+    default Iterator<Object> readValues(Class<?> clazz, InputStream inputStream) throws Exception {
+        return Arrays.asList((Object[]) readValue(Array.newInstance(clazz, 0).getClass(), inputStream))
+                .iterator();
+    }
 }
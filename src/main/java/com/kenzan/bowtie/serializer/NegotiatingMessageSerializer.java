@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.serializer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/***
+ * <p>
+ * {@link MessageSerializer} negotiating the data format with the server.  Requests accept every registered
+ * format, weighted by preference, and bodies are written with the preferred format.  Responses are read with
+ * the serializer matching their Content-Type, or the preferred one when it is missing or unknown.
+ * </p>
+ *
+ * <pre>
+ * RestAdapterConfig.custom()
+ *     .withSerializerPreference(new SmileMessageSerializer(), new JacksonMessageSerializer())
+ *     .build();
+ * </pre>
+ */
+public class NegotiatingMessageSerializer implements MessageSerializer {
+
+    final static private Logger LOGGER = LoggerFactory.getLogger(NegotiatingMessageSerializer.class);
+
+    private final List<MessageSerializer> serializers;
+    private final MessageSerializer preferred;
+    private final String accept;
+
+    /***
+     * @param serializers the serializers in order of preference, each with a content type
+     */
+    public NegotiatingMessageSerializer(List<MessageSerializer> serializers) {
+        Preconditions.checkArgument(!serializers.isEmpty(), "At least one serializer required");
+
+        this.serializers = new ArrayList<>(serializers);
+        this.preferred = serializers.get(0);
+
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < serializers.size(); i++) {
+            final String contentType = Preconditions.checkNotNull(serializers.get(i).getContentType(),
+                    "%s has no content type", serializers.get(i));
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(contentType);
+            if (i > 0) {
+                sb.append(";q=0.").append(Math.max(10 - i, 1));
+            }
+        }
+        this.accept = sb.toString();
+    }
+
+    @Override
+    public String getContentType() {
+        return preferred.getContentType();
+    }
+
+    @Override
+    public String getAccept() {
+        return accept;
+    }
+
+    @Override
+    public MessageSerializer forContentType(String contentType) {
+        if (contentType == null) {
+            return preferred;
+        }
+
+        final int semicolon = contentType.indexOf(';');
+        final String mediaType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon))
+                .trim().toLowerCase(Locale.ENGLISH);
+        for (MessageSerializer serializer : serializers) {
+            if (serializer.getContentType().equalsIgnoreCase(mediaType)) {
+                return serializer;
+            }
+        }
+        return preferred;
+    }
+
+    @Override
+    public void writeValue(Object object, OutputStream outputStream) throws Exception {
+        preferred.writeValue(object, outputStream);
+    }
+
+    @Override
+    public String writeValue(Object object) throws Exception {
+        return preferred.writeValue(object);
+    }
+
+    @Override
+    public Object readValue(Class<?> clazz, InputStream inputStream) throws Exception {
+        return preferred.readValue(clazz, inputStream);
+    }
+
+    @Override
+    public Object readValue(Class<?> clazz, byte[] bytes, int offset, int length) throws Exception {
+        return preferred.readValue(clazz, bytes, offset, length);
+    }
+
+    @Override
+    public Object readValue(Type type, InputStream inputStream) throws Exception {
+        return preferred.readValue(type, inputStream);
+    }
+
+    @Override
+    public Object readValue(Type type, byte[] bytes, int offset, int length) throws Exception {
+        return preferred.readValue(type, bytes, offset, length);
+    }
+
+    @Override
+    public Iterator<Object> readValues(Class<?> clazz, InputStream inputStream) throws Exception {
+        return preferred.readValues(clazz, inputStream);
+    }
+
+    @Override
+    public void prepare(Type type) {
+        for (MessageSerializer serializer : serializers) {
+            try {
+                serializer.prepare(type);
+            } catch (RuntimeException e) {
+                // Only a hint, a type need not be readable in every format
+                LOGGER.debug("{} cannot prepare {}", serializer, type, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NegotiatingMessageSerializer" + serializers;
+    }
+}
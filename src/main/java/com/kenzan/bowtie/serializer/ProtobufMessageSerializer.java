@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.serializer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.protobuf.MessageLite;
+
+/***
+ * <p>
+ * {@link MessageSerializer} for Protocol Buffers messages.  Response classes must be generated message
+ * classes; they are parsed with their static parseFrom method, looked up once per class.
+ * </p>
+ *
+ * <p>
+ * Streamed responses, and List, Collection or Iterable responses of a message class, are read as a sequence
+ * of length delimited messages, as written by MessageLite.writeDelimitedTo.
+ * </p>
+ */
+public class ProtobufMessageSerializer implements MessageSerializer {
+
+    public static final String CONTENT_TYPE = "application/x-protobuf";
+
+    private final Map<Class<?>, Method> parsers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Method> delimitedParsers = new ConcurrentHashMap<>();
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public void writeValue(Object object, OutputStream outputStream) throws Exception {
+        ((MessageLite) object).writeTo(outputStream);
+    }
+
+    @Override
+    public Object readValue(Class<?> clazz, InputStream inputStream) throws Exception {
+        return invoke(parser(parsers, clazz, "parseFrom"), inputStream);
+    }
+
+    /***
+     * Reads a message, or a list of length delimited messages for a List, Collection or Iterable of a
+     * message class.  Other generic types are read as their raw class.
+     */
+    @Override
+    public Object readValue(Type type, InputStream inputStream) throws Exception {
+
+        final Class<?> elementClass = elementClass(type);
+        if (elementClass == null) {
+            return MessageSerializer.super.readValue(type, inputStream);
+        }
+        final List<Object> messages = new ArrayList<>();
+        readValues(elementClass, inputStream).forEachRemaining(messages::add);
+        return messages;
+    }
+
+    @Override
+    public Iterator<Object> readValues(Class<?> clazz, InputStream inputStream) throws Exception {
+
+        final Method parser = parser(delimitedParsers, clazz, "parseDelimitedFrom");
+        return new Iterator<Object>() {
+
+            private Object next = invoke(parser, inputStream);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Object next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final Object current = next;
+                try {
+                    next = invoke(parser, inputStream);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return current;
+            }
+        };
+    }
+
+    @Override
+    public void prepare(Type type) {
+        if (type instanceof Class && MessageLite.class.isAssignableFrom((Class<?>) type)) {
+            parser(parsers, (Class<?>) type, "parseFrom");
+        }
+        final Class<?> elementClass = elementClass(type);
+        if (elementClass != null) {
+            parser(delimitedParsers, elementClass, "parseDelimitedFrom");
+        }
+    }
+
+    /***
+     * @return the message class of a List, Collection or Iterable type, else null
+     */
+    private static Class<?> elementClass(Type type) {
+
+        if (!(type instanceof ParameterizedType)) {
+            return null;
+        }
+        final ParameterizedType parameterizedType = (ParameterizedType) type;
+        final Type rawType = parameterizedType.getRawType();
+        final Type argument = parameterizedType.getActualTypeArguments()[0];
+        return rawType instanceof Class && ((Class<?>) rawType).isAssignableFrom(ArrayList.class)
+                && argument instanceof Class && MessageLite.class.isAssignableFrom((Class<?>) argument)
+                ? (Class<?>) argument : null;
+    }
+
+    private static Method parser(Map<Class<?>, Method> parsers, Class<?> clazz, String name) {
+        return parsers.computeIfAbsent(clazz, c -> {
+            try {
+                return c.getMethod(name, InputStream.class);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(c.getName() + " is not a protobuf message class", e);
+            }
+        });
+    }
+
+    private static Object invoke(Method parser, InputStream inputStream) throws Exception {
+        try {
+            return parser.invoke(null, inputStream);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.serializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/***
+ * <p>
+ * {@link MessageSerializer} for the binary Smile data format, using the same Jackson mappings and
+ * configuration as the {@link JacksonMessageSerializer}.
+ * </p>
+ */
+public class SmileMessageSerializer extends JacksonMessageSerializer {
+
+    public static final String CONTENT_TYPE = "application/x-jackson-smile";
+
+    public SmileMessageSerializer(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    public SmileMessageSerializer() {
+        this(configure(new ObjectMapper(new SmileFactory())));
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+}
@@ -16,19 +16,27 @@
 package com.netflix.niws.client.http;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import com.kenzan.bowtie.cache.CacheControl;
 import com.netflix.client.config.IClientConfig;
 import com.netflix.client.http.HttpResponse;
 import com.sun.jersey.api.client.ClientResponse;
@@ -37,29 +45,101 @@ import com.sun.jersey.spi.MessageBodyWorkers;
 
 /***
  * <p>
- * POJO class for caching response objects. Used by Kryo (requires
- * getters/setters). Also used to create re-create {@link HttpResponse}, which
+ * POJO class for caching response objects. Encoded for remote caches by
+ * {@link com.kenzan.bowtie.cache.CachedResponseCodec} through its
+ * getters/setters. Also used to create re-create {@link HttpResponse}, which
  * is why it has to be in the com.netflix.niws.client.http package.
  * </p>
  *
+ * <p>
+ * Keeps the ETag and Last-Modified validators and the time it was created, so a stale
+ * response can be revalidated with a conditional request instead of downloaded again.
+ * </p>
+ *
+ * <p>
+ * Bodies can be stored compressed with {@link Deflater}, see {@link #createResponse(int, Map, byte[], int)}.
+ * {@link #getCachedBytes()} always returns the uncompressed body, {@link #openBody()} inflates it as it is read.
+ * </p>
+ *
+ * <p>
+ * Off-heap caches move the stored body into a direct {@link ByteBuffer}, see {@link #withDirectBody(ByteBuffer)},
+ * which {@link #openBody()} reads without copying it back onto the heap.
+ * </p>
+ *
+ * <p>
+ * In-memory caches can also keep the deserialized value next to the bytes, so that cache hits skip
+ * deserialization.  The value is transient, it is never serialized with the response.
+ * </p>
+ *
  */
 public class CachedResponse implements Serializable {
 
-    private static final Logger LOGGER = LoggerFactory
-            .getLogger(CachedResponse.class);
-
     private static final long serialVersionUID = -6367516151816285192L;
 
+    /*** Headers of a 304 that describe its own framing rather than the stored body, see RFC 9111 section 3.2 */
+    private static final Collection<String> NOT_MODIFIED_EXCLUDED_HEADERS = Arrays.asList(
+            "Content-Length", "Content-Encoding", "Transfer-Encoding");
+
     public static CachedResponse createResponse(int status,
             Map<String, Collection<String>> headers, byte[] cachedBytes) {
 
         return new CachedResponse(status, headers, cachedBytes);
     }
 
+    /***
+     * Creates a response whose body is compressed if it is at least compressionThreshold bytes long and
+     * compression makes it smaller.
+     *
+     * @param status the status code
+     * @param headers the headers
+     * @param cachedBytes the uncompressed body
+     * @param compressionThreshold the size from which bodies are compressed, or 0 not to compress
+     * @return the response
+     */
+    public static CachedResponse createResponse(int status,
+            Map<String, Collection<String>> headers, byte[] cachedBytes, int compressionThreshold) {
+
+        return createResponse(status, headers, cachedBytes, compressionThreshold, CacheControl.of(headers));
+    }
+
+    /***
+     * Creates a response whose body is compressed if it is at least compressionThreshold bytes long and
+     * compression makes it smaller, with the caching directives already parsed from its headers.
+     *
+     * @param status the status code
+     * @param headers the headers
+     * @param cachedBytes the uncompressed body
+     * @param compressionThreshold the size from which bodies are compressed, or 0 not to compress
+     * @param cacheControl the directives parsed from the headers, see {@link CacheControl#of(Map)}
+     * @return the response
+     */
+    public static CachedResponse createResponse(int status, Map<String, Collection<String>> headers,
+            byte[] cachedBytes, int compressionThreshold, CacheControl cacheControl) {
+
+        final CachedResponse response = new CachedResponse(status, headers, cachedBytes, cacheControl);
+        if (compressionThreshold > 0 && cachedBytes.length >= compressionThreshold) {
+            final byte[] compressed = deflate(cachedBytes);
+            if (compressed.length < cachedBytes.length) {
+                response.cachedBytes = compressed;
+                response.compressed = true;
+            }
+        }
+        return response;
+    }
+
     private Map<String, Collection<String>> headers;
     private int status;
     private byte[] cachedBytes;
+    private boolean compressed;
     private long ttl;
+    private long createdAt;
+    private String eTag;
+    private String lastModified;
+    private long staleWhileRevalidate;
+    private long staleIfError;
+    private transient volatile Entry<Type, Object> value;
+    private transient ByteBuffer directBody;
+    private transient CacheControl cacheControl;
 
     public CachedResponse() {
 
@@ -68,17 +148,73 @@ public class CachedResponse implements Serializable {
     public CachedResponse(int status, Map<String, Collection<String>> headers,
             byte[] cachedBytes) {
 
+        this(status, headers, cachedBytes, CacheControl.of(headers));
+    }
+
+    private CachedResponse(int status, Map<String, Collection<String>> headers,
+            byte[] cachedBytes, CacheControl cacheControl) {
+
         this.status = status;
         this.headers = headers;
         this.cachedBytes = cachedBytes;
-        this.ttl = parseTTL(headers);
+        this.cacheControl = cacheControl;
+        this.ttl = cacheControl.getTTL();
+        this.createdAt = System.currentTimeMillis();
+        this.eTag = cacheControl.getETag();
+        this.lastModified = cacheControl.getLastModified();
+        this.staleWhileRevalidate = cacheControl.getStaleWhileRevalidate();
+        this.staleIfError = cacheControl.getStaleIfError();
 
     }
 
+    /***
+     * @return the uncompressed body
+     */
     public byte[] getCachedBytes() {
+        final byte[] storedBytes = getStoredBytes();
+        return compressed ? inflate(storedBytes) : storedBytes;
+    }
+
+    /***
+     * @return the body as it is stored, compressed if {@link #isCompressed()}, copied onto the heap if
+     *     {@link #isDirect()}
+     */
+    public byte[] getStoredBytes() {
+        if (directBody != null) {
+            final byte[] storedBytes = new byte[directBody.remaining()];
+            directBody.duplicate().get(storedBytes);
+            return storedBytes;
+        }
         return cachedBytes;
     }
 
+    /***
+     * @return the length of the stored body
+     */
+    public int getStoredLength() {
+        if (directBody != null) {
+            return directBody.remaining();
+        }
+        return cachedBytes == null ? 0 : cachedBytes.length;
+    }
+
+    /***
+     * @return true if the stored body is compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /***
+     * @return a stream of the uncompressed body
+     */
+    public InputStream openBody() {
+        final InputStream inputStream = directBody != null
+                ? new ByteBufferInputStream(directBody.duplicate())
+                : new ByteArrayInputStream(cachedBytes);
+        return compressed ? new InflaterInputStream(inputStream) : inputStream;
+    }
+
     public Map<String, Collection<String>> getHeaders() {
         return headers;
     }
@@ -91,32 +227,183 @@ public class CachedResponse implements Serializable {
         return ttl;
     }
 
-    private long parseTTL(Map<String, Collection<String>> headers) {
+    /***
+     * @return the time the response was received, or last revalidated, in milliseconds
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
 
-        long ttl = 0;
+    public String getETag() {
+        return eTag;
+    }
 
-        if (headers != null) {
-            Optional<Entry<String, Collection<String>>> cacheControlEntry = headers
-                    .entrySet().stream()
-                    .filter(t -> "Cache-Control".equals(t.getKey()))
-                    .findFirst();
+    public String getLastModified() {
+        return lastModified;
+    }
 
-            if (cacheControlEntry.isPresent()) {
-                Optional<String> cacheValue = cacheControlEntry.get()
-                        .getValue().stream().findFirst();
-                if (cacheValue.isPresent()) {
-                    LOGGER.debug("cacheValue: {}", cacheValue.get());
-                    Pattern pattern = Pattern.compile("^.*max-age=(\\d+).*$");
-                    Matcher matcher = pattern.matcher(cacheValue.get());
-                    if (matcher.matches()) {
-                        ttl = Long.parseLong(matcher.group(1));
-                        LOGGER.debug("Matches: {}", ttl);
-                    }
-                }
-            }
+    /***
+     * @return the caching directives of the response, parsed once from its headers
+     */
+    public CacheControl getCacheControl() {
+        if (cacheControl == null) {
+            // Not serialized, parsed again after the response is read back from a cache
+            cacheControl = CacheControl.of(headers);
         }
+        return cacheControl;
+    }
 
-        return ttl;
+    /***
+     * @return the stale-while-revalidate window, in seconds after the TTL
+     */
+    public long getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /***
+     * @return the stale-if-error window, in seconds after the TTL
+     */
+    public long getStaleIfError() {
+        return staleIfError;
+    }
+
+    /***
+     * @return the age of the response in milliseconds
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - createdAt;
+    }
+
+    /***
+     * @return true if the response had a max-age and it has elapsed
+     */
+    public boolean isStale() {
+        return ttl > 0 && getAge() >= ttl * 1000;
+    }
+
+    /***
+     * @return true if the response is stale but may still be served while it is refreshed
+     */
+    public boolean isStaleWhileRevalidate() {
+        return isStale() && getAge() < (ttl + staleWhileRevalidate) * 1000;
+    }
+
+    /***
+     * @return true if the response is stale but may still be served when refreshing it fails
+     */
+    public boolean isStaleIfError() {
+        return isStale() && getAge() < (ttl + staleIfError) * 1000;
+    }
+
+    /***
+     * @return true if the response has an ETag or Last-Modified validator
+     */
+    public boolean isRevalidatable() {
+        return eTag != null || lastModified != null;
+    }
+
+    /***
+     * @param staleRetentionSeconds how long a response with a validator is kept past its stale windows
+     * @return the number of seconds the response is worth keeping after it was created: its TTL, plus its
+     *     stale-while-revalidate or stale-if-error window and the stale retention if it is revalidatable,
+     *     or 0 if it has no TTL
+     */
+    public long getRetention(long staleRetentionSeconds) {
+
+        if (ttl <= 0) {
+            return 0;
+        }
+        final long retention = ttl + Math.max(staleWhileRevalidate, staleIfError);
+        return isRevalidatable() ? retention + staleRetentionSeconds : retention;
+    }
+
+    /***
+     * Creates the response refreshed by a 304 Not Modified: the body is kept, the headers sent with the
+     * 304 replace the stored ones, except Content-Length, Content-Encoding and Transfer-Encoding which
+     * describe the body, and the TTL starts again.
+     *
+     * @param notModifiedHeaders the headers of the 304 response
+     * @return the refreshed response
+     */
+    public CachedResponse revalidated(Map<String, Collection<String>> notModifiedHeaders) {
+
+        final Map<String, Collection<String>> merged = new HashMap<>(headers);
+        notModifiedHeaders.forEach((name, values) -> {
+            if (NOT_MODIFIED_EXCLUDED_HEADERS.stream().anyMatch(name::equalsIgnoreCase)) {
+                return;
+            }
+            merged.keySet().removeIf(name::equalsIgnoreCase);
+            merged.put(name, values);
+        });
+        final CachedResponse revalidated = new CachedResponse(status, merged, cachedBytes);
+        revalidated.compressed = compressed;
+        revalidated.directBody = directBody;
+        revalidated.value = value;
+        return revalidated;
+    }
+
+    /***
+     * Creates a copy of the response whose stored body is read from the given buffer instead of a byte array.
+     * The buffer is never modified, reads use duplicates of it.
+     *
+     * @param directBody the stored body, compressed if {@link #isCompressed()}, from its position to its limit
+     * @return the copy
+     */
+    public CachedResponse withDirectBody(ByteBuffer directBody) {
+
+        final CachedResponse response = new CachedResponse();
+        response.headers = headers;
+        response.status = status;
+        response.compressed = compressed;
+        response.ttl = ttl;
+        response.createdAt = createdAt;
+        response.eTag = eTag;
+        response.lastModified = lastModified;
+        response.staleWhileRevalidate = staleWhileRevalidate;
+        response.staleIfError = staleIfError;
+        response.value = value;
+        response.directBody = directBody;
+        response.cacheControl = cacheControl;
+        return response;
+    }
+
+    /***
+     * Creates a copy of the response whose stored body is copied onto the heap, so that it stays readable once
+     * the direct buffer it was read from is reused.
+     *
+     * @return the copy
+     */
+    public CachedResponse withHeapBody() {
+
+        final CachedResponse response = withDirectBody(null);
+        response.cachedBytes = getStoredBytes();
+        return response;
+    }
+
+    /***
+     * @return true if the stored body is in a direct buffer, see {@link #withDirectBody(ByteBuffer)}
+     */
+    public boolean isDirect() {
+        return directBody != null;
+    }
+
+    /***
+     * @param type the type the body was deserialized to
+     * @return the deserialized body if it was kept for the same type, else null
+     */
+    public Object getValue(Type type) {
+        final Entry<Type, Object> value = this.value;
+        return value != null && value.getKey().equals(type) ? value.getValue() : null;
+    }
+
+    /***
+     * Keeps the deserialized body in memory, see {@link #getValue(Type)}.
+     *
+     * @param type the type the body was deserialized to
+     * @param value the deserialized body
+     */
+    public void setValue(Type type, Object value) {
+        this.value = new SimpleImmutableEntry<>(type, value);
     }
 
     public void setCachedBytes(byte[] cachedBytes) {
@@ -124,6 +411,11 @@ public class CachedResponse implements Serializable {
         this.cachedBytes = cachedBytes;
     }
 
+    public void setCompressed(boolean compressed) {
+
+        this.compressed = compressed;
+    }
+
     public void setHeaders(Map<String, Collection<String>> headers) {
 
         this.headers = headers;
@@ -139,6 +431,31 @@ public class CachedResponse implements Serializable {
         this.ttl = ttl;
     }
 
+    public void setCreatedAt(long createdAt) {
+
+        this.createdAt = createdAt;
+    }
+
+    public void setETag(String eTag) {
+
+        this.eTag = eTag;
+    }
+
+    public void setLastModified(String lastModified) {
+
+        this.lastModified = lastModified;
+    }
+
+    public void setStaleWhileRevalidate(long staleWhileRevalidate) {
+
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    public void setStaleIfError(long staleIfError) {
+
+        this.staleIfError = staleIfError;
+    }
+
     public HttpResponse toHttpResponse(MessageBodyWorkers workers) {
 
         final InBoundHeaders inBoundHeaders = new InBoundHeaders();
@@ -146,12 +463,109 @@ public class CachedResponse implements Serializable {
             inBoundHeaders.put(k, new ArrayList<String>(v));
         });
 
+        return toHttpResponse(status, inBoundHeaders, openBody(), workers);
+    }
+
+    /***
+     * Creates an {@link HttpResponse} from its parts, without parsing its headers, for transports other than
+     * the RestClient.
+     *
+     * @param status the status code
+     * @param headers the headers
+     * @param body the body
+     * @param workers used to read the body as an entity
+     * @return the response
+     */
+    public static HttpResponse toHttpResponse(int status, InBoundHeaders headers, InputStream body,
+            MessageBodyWorkers workers) {
+
         ClientResponse clientResponse = new ClientResponse(status,
-                inBoundHeaders, new ByteArrayInputStream(cachedBytes), workers);
+                headers, body, workers);
 
         URI requestedURI = null;
         IClientConfig config = null;
 
         return new HttpClientResponse(clientResponse, requestedURI, config);
     }
-}
\ No newline at end of file
+
+    private static byte[] deflate(byte[] bytes) {
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                outputStream.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return outputStream.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length * 4);
+            final byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                final int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated compressed body");
+                }
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Could not inflate cached body", e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /***
+     * Reads a {@link ByteBuffer} from its position to its limit
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -15,19 +15,26 @@
  */
 package com.kenzan.bowtie;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 import rx.Observable;
 
 import com.kenzan.bowtie.annotation.Body;
 import com.kenzan.bowtie.annotation.CacheKeyGroup;
+import com.kenzan.bowtie.annotation.Collapse;
 import com.kenzan.bowtie.annotation.Cookie;
 import com.kenzan.bowtie.annotation.Cookies;
 import com.kenzan.bowtie.annotation.HeaderParam;
 import com.kenzan.bowtie.annotation.HystrixGroup;
+import com.kenzan.bowtie.annotation.ImmutableResponse;
 import com.kenzan.bowtie.annotation.Path;
 import com.kenzan.bowtie.annotation.Query;
 import com.kenzan.bowtie.annotation.ResponseType;
+import com.kenzan.bowtie.annotation.Streaming;
 import com.kenzan.bowtie.model.FakeUser;
 import com.kenzan.bowtie.model.FakeUserAddress;
 import com.kenzan.bowtie.model.FakeUsers;
@@ -61,11 +68,64 @@ public interface FakeClient {
     @CacheKeyGroup("userCache")
     public HttpResponse getCachedUserResponse(@Path("username") String name);
 
+    @Http(method = HttpMethod.GET, uri = "/user/{username}", headers = { @Http.Header(name = "X-SESSION-ID", value = "55892d6d-77df-4617-b728-6f5de97f5752") })
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    @CacheKeyGroup("immutableUserCache")
+    @ImmutableResponse
+    public FakeUser getImmutableUser(@Path("username") String name);
+
+    @Http(method = HttpMethod.GET, uri = "/user/{username}", headers = { @Http.Header(name = "X-SESSION-ID", value = "55892d6d-77df-4617-b728-6f5de97f5752") })
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    @CacheKeyGroup("immutableUserCache")
+    public FakeUser getMutableUser(@Path("username") String name);
+
+    @Http(method = HttpMethod.GET, uri = "/user/revalidated/{username}")
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    @CacheKeyGroup("userCache")
+    public FakeUser getRevalidatedUser(@Path("username") String name);
+
+    @Http(method = HttpMethod.GET, uri = "/user/localized/{username}")
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    @CacheKeyGroup("localizedUserCache")
+    public FakeUser getLocalizedUser(@Path("username") String name,
+            @HeaderParam(name = "Accept-Language") String language);
+
     @Http(method = HttpMethod.GET, uri = "/user/{username}", headers = { @Http.Header(name = "X-SESSION-ID", value = "55892d6d-77df-4617-b728-6f5de97f5752") })
     @ResponseType(responseClass = FakeUser.class)
     @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
     public Observable<FakeUser> getUserObservable(@Path("username") String name);
 
+    @Http(method = HttpMethod.GET, uri = "/user/{username}", headers = { @Http.Header(name = "X-SESSION-ID", value = "55892d6d-77df-4617-b728-6f5de97f5752") })
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    public CompletableFuture<FakeUser> getUserFuture(@Path("username") String name);
+
+    @Http(method = HttpMethod.GET, uri = "/user/{username}", headers = { @Http.Header(name = "X-SESSION-ID", value = "55892d6d-77df-4617-b728-6f5de97f5752") })
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    public Future<FakeUser> getUserPlainFuture(@Path("username") String name);
+
+    @Http(method = HttpMethod.GET, uri = "/user/{username}", headers = { @Http.Header(name = "X-SESSION-ID", value = "55892d6d-77df-4617-b728-6f5de97f5752") })
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    @Collapse(batchMethod = "getUserBatch", keyProperty = "name", windowMs = 100)
+    public CompletableFuture<FakeUser> getCollapsedUser(@Path("username") String name);
+
+    @Http(method = HttpMethod.GET, uri = "/user/batch")
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    public FakeUser[] getUserBatch(@Query("username") Collection<String> names);
+
+    @Http(method = HttpMethod.GET, uri = "/user/batch")
+    @ResponseType(responseClass = FakeUser.class)
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    @Streaming
+    public Observable<FakeUser> streamUserBatch(@Query("username") Collection<String> names);
+
+    @Http(method = HttpMethod.GET, uri = "/user/batch")
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    public List<FakeUser> getUserList(@Query("username") Collection<String> names);
+
+    @Http(method = HttpMethod.GET, uri = "/user/batch")
+    @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
+    public Observable<List<FakeUser>> getUserListObservable(@Query("username") Collection<String> names);
+
     @Http(method = HttpMethod.GET, uri = "/user/{field}/{username}", headers = { @Http.Header(name = "Cache-Control", value = "no-cache") })
     @HystrixGroup(groupKey = GROUP_KEY, commandKey = COMMAND_KEY)
     public FakeUserAddress getUserAddress(@Path("username") String name,
@@ -53,6 +53,110 @@ public class MockServerInitializationClass implements ExpectationInitializer {
         
         getCachedUser(mockServerClient);
         
+        getUserBatch(mockServerClient);
+        
+        getRevalidatedUser(mockServerClient);
+        
+        getLocalizedUser(mockServerClient);
+        
+    }
+
+    private void getLocalizedUser(MockServerClient mockServerClient) {
+
+        mockServerClient
+        .dumpToLog()
+        .when(
+            HttpRequest.request()
+            .withMethod("GET")
+            .withHeader(Header.header("Accept-Language", "fr"))
+            .withPath("/user/localized/edoe"),
+            Times.unlimited()
+        ).respond(
+            HttpResponse.response()
+            .withStatusCode(200)
+            .withHeader(Header.header("Cache-Control", "public,max-age=300"))
+            .withHeader(Header.header("Vary", "Accept-Language"))
+            .withBody("{ \"name\" : \"Edouard Doe\" }")
+        );
+
+        mockServerClient
+        .dumpToLog()
+        .when(
+            HttpRequest.request()
+            .withMethod("GET")
+            .withPath("/user/localized/edoe"),
+            Times.unlimited()
+        ).respond(
+            HttpResponse.response()
+            .withStatusCode(200)
+            .withHeader(Header.header("Cache-Control", "public,max-age=300"))
+            .withHeader(Header.header("Vary", "Accept-Language"))
+            .withBody("{ \"name\" : \"Eddie Doe\" }")
+        );
+    }
+
+    private void getRevalidatedUser(MockServerClient mockServerClient) {
+
+        // Conditional request first, so it is matched before the full response
+        mockServerClient
+        .dumpToLog()
+        .when(
+            HttpRequest.request()
+            .withMethod("GET")
+            .withHeader(Header.header("If-None-Match", "\"v1\""))
+            .withPath("/user/revalidated/cdoe"),
+            Times.unlimited()
+        ).respond(
+            HttpResponse.response()
+            .withStatusCode(304)
+            .withHeader(Header.header("ETag", "\"v1\""))
+            .withHeader(Header.header("Cache-Control", "public,max-age=300"))
+        );
+
+        mockServerClient
+        .dumpToLog()
+        .when(
+            HttpRequest.request()
+            .withMethod("GET")
+            .withPath("/user/revalidated/cdoe"),
+            Times.unlimited()
+        ).respond(
+            HttpResponse.response()
+            .withStatusCode(200)
+            .withHeader(Header.header("ETag", "\"v1\""))
+            .withHeader(Header.header("Cache-Control", "public,max-age=1"))
+            .withBody("{ \"name\" : \"Carl Doe\" }")
+        );
+
+        mockServerClient
+        .dumpToLog()
+        .when(
+            HttpRequest.request()
+            .withMethod("GET")
+            .withPath("/user/revalidated/ddoe"),
+            Times.unlimited()
+        ).respond(
+            HttpResponse.response()
+            .withStatusCode(200)
+            .withHeader(Header.header("Cache-Control", "public,max-age=1,stale-while-revalidate=30"))
+            .withBody("{ \"name\" : \"Dana Doe\" }")
+        );
+    }
+
+    private void getUserBatch(MockServerClient mockServerClient) {
+
+        mockServerClient
+        .dumpToLog()
+        .when(
+            HttpRequest.request()
+            .withMethod("GET")
+            .withPath("/user/batch"),
+            Times.unlimited()
+        ).respond(
+            HttpResponse.response()
+            .withStatusCode(200)
+            .withBody("[ { \"name\" : \"jdoe\" }, { \"name\" : \"bbelcher\" } ]")
+        );
     }
 
     private void emailUser(MockServerClient mockServerClient) {
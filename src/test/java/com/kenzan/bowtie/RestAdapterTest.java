@@ -17,20 +17,34 @@ package com.kenzan.bowtie;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsNot;
+import org.hamcrest.core.IsSame;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.kenzan.bowtie.annotation.Encoding;
+import com.kenzan.bowtie.annotation.ExecutionMode;
 import com.kenzan.bowtie.cache.GuavaRestCache;
+import com.kenzan.bowtie.cache.RawCacheKeyStrategy;
 import com.kenzan.bowtie.http.JerseyInvocationHandler;
 import com.kenzan.bowtie.model.FakeUser;
 import com.kenzan.bowtie.model.FakeUserAddress;
@@ -39,6 +53,7 @@ import com.kenzan.bowtie.serializer.JacksonMessageSerializer;
 import com.netflix.client.ClientException;
 import com.netflix.client.http.HttpResponse;
 import com.netflix.config.ConfigurationManager;
+import com.netflix.niws.client.http.CachedResponse;
 
 /***
  * <p>
@@ -58,6 +73,7 @@ public class RestAdapterTest {
     private static FakeClient fakeClient;
     private static FakeClient fakeClient2;
     private static FakeClient fakeClient3;
+    private static FakeClient nonBlockingClient;
 
     private static FakeUser user;
 
@@ -86,10 +102,18 @@ public class RestAdapterTest {
         final RestAdapter restAdapter3 = RestAdapter.getNamedAdapter(
                 "sample-client", RestAdapterConfig.custom()
                         .withMessageSerializer(new JacksonMessageSerializer())
-                        .withRestCache(cache).build());
+                        .withRestCache(cache)
+                        .withCacheKeyStrategy(new RawCacheKeyStrategy()).build());
 
         fakeClient3 = restAdapter3.create(FakeClient.class);
 
+        final RestAdapter nonBlockingAdapter = RestAdapter.getNamedAdapter(
+                "sample-client", RestAdapterConfig.custom()
+                        .withMessageSerializer(new JacksonMessageSerializer())
+                        .withExecutionMode(ExecutionMode.nonBlocking).build());
+
+        nonBlockingClient = nonBlockingAdapter.create(FakeClient.class);
+
         user = new FakeUser();
         user.setName("John Doe");
     }
@@ -109,6 +133,96 @@ public class RestAdapterTest {
         Assert.assertThat(user.getName(), IsEqual.equalTo("John Doe"));
     }
 
+    @Test
+    public void testGetUserNonBlocking() {
+        LOGGER.info("Starting testGetUserNonBlocking");
+        FakeUser user = nonBlockingClient.getUser("jdoe");
+        Assert.assertThat(user.getName(), IsEqual.equalTo("John Doe"));
+
+        user = nonBlockingClient.getUserObservable("jdoe").toBlocking()
+                .single();
+        Assert.assertThat(user.getName(), IsEqual.equalTo("John Doe"));
+    }
+
+    @Test
+    public void testGetUsersNonBlocking() {
+        LOGGER.info("Starting testGetUsersNonBlocking");
+        FakeUsers users = nonBlockingClient.getUsers("bbelcher",
+                Optional.ofNullable("email"),
+                "020835c7-cf7e-4ba5-b117-4402e5d79079");
+        Assert.assertThat(users.getUsers().size(), IsEqual.equalTo(2));
+
+        HttpResponse response = nonBlockingClient.emailUser(user);
+        Assert.assertThat(response.getStatus(), IsEqual.equalTo(200));
+    }
+
+    @Test
+    public void testGetUserFuture() throws InterruptedException, ExecutionException {
+        LOGGER.info("Starting testGetUserFuture");
+        final String name = fakeClient.getUserFuture("jdoe")
+                .thenApply(FakeUser::getName).get();
+        Assert.assertThat(name, IsEqual.equalTo("John Doe"));
+
+        FakeUser user = fakeClient.getUserPlainFuture("jdoe").get();
+        Assert.assertThat(user.getName(), IsEqual.equalTo("John Doe"));
+
+        user = nonBlockingClient.getUserFuture("jdoe").get();
+        Assert.assertThat(user.getName(), IsEqual.equalTo("John Doe"));
+    }
+
+    @Test
+    public void testGetCollapsedUser() throws InterruptedException, ExecutionException {
+        LOGGER.info("Starting testGetCollapsedUser");
+        final CompletableFuture<FakeUser> jdoe = fakeClient.getCollapsedUser("jdoe");
+        final CompletableFuture<FakeUser> bbelcher = fakeClient.getCollapsedUser("bbelcher");
+        final CompletableFuture<FakeUser> unknown = fakeClient.getCollapsedUser("unknown");
+        // Same collapser, batched with its own client
+        final CompletableFuture<FakeUser> other = fakeClient2.getCollapsedUser("jdoe");
+
+        Assert.assertThat(jdoe.get().getName(), IsEqual.equalTo("jdoe"));
+        Assert.assertThat(bbelcher.get().getName(), IsEqual.equalTo("bbelcher"));
+        Assert.assertThat(unknown.get(), IsEqual.equalTo(null));
+        Assert.assertThat(other.get().getName(), IsEqual.equalTo("jdoe"));
+    }
+
+    @Test
+    public void testGetCollapsedUserNonBlocking() throws InterruptedException, ExecutionException {
+        LOGGER.info("Starting testGetCollapsedUserNonBlocking");
+        // Batched separately from the collapsed calls of the other clients
+        final CompletableFuture<FakeUser> jdoe = nonBlockingClient.getCollapsedUser("jdoe");
+        final CompletableFuture<FakeUser> other = fakeClient.getCollapsedUser("bbelcher");
+        final CompletableFuture<FakeUser> unknown = nonBlockingClient.getCollapsedUser("unknown");
+
+        Assert.assertThat(jdoe.get().getName(), IsEqual.equalTo("jdoe"));
+        Assert.assertThat(other.get().getName(), IsEqual.equalTo("bbelcher"));
+        Assert.assertThat(unknown.get(), IsEqual.equalTo(null));
+    }
+
+    @Test
+    public void testStreamUserBatch() {
+        LOGGER.info("Starting testStreamUserBatch");
+        final List<String> names = Arrays.asList("jdoe", "bbelcher");
+
+        Assert.assertThat(fakeClient.streamUserBatch(names).map(FakeUser::getName)
+                .toList().toBlocking().single(), IsEqual.equalTo(names));
+        Assert.assertThat(nonBlockingClient.streamUserBatch(names).map(FakeUser::getName)
+                .toList().toBlocking().single(), IsEqual.equalTo(names));
+        Assert.assertThat(fakeClient.streamUserBatch(names).take(1).map(FakeUser::getName)
+                .toBlocking().single(), IsEqual.equalTo("jdoe"));
+    }
+
+    @Test
+    public void testGetUserList() {
+        LOGGER.info("Starting testGetUserList");
+        final List<String> names = Arrays.asList("jdoe", "bbelcher");
+
+        List<FakeUser> users = fakeClient.getUserList(names);
+        Assert.assertThat(users.get(1).getName(), IsEqual.equalTo("bbelcher"));
+
+        users = nonBlockingClient.getUserListObservable(names).toBlocking().single();
+        Assert.assertThat(users.get(0).getName(), IsEqual.equalTo("jdoe"));
+    }
+
     @Test
     public void testGetUserAddress() {
         LOGGER.info("Starting testGetUserAddress");
@@ -193,4 +307,123 @@ public class RestAdapterTest {
                 FakeUser.class);
         Assert.assertThat(user.getName(), IsEqual.equalTo("Bob Doe"));
     }
+
+    @Test
+    public void testRevalidateStaleUser() {
+        LOGGER.info("Starting testRevalidateStaleUser");
+        FakeUser user = fakeClient3.getRevalidatedUser("cdoe");
+        Assert.assertThat(user.getName(), IsEqual.equalTo("Carl Doe"));
+
+        final CachedResponse cached = cache.get("userCache:/user/revalidated/cdoe").get();
+        Assert.assertThat(cached.getETag(), IsEqual.equalTo("\"v1\""));
+        Assert.assertThat(cached.getTTL(), IsEqual.equalTo(1L));
+
+        // Once max-age=1 has elapsed, the 304 keeps the body and extends the TTL
+        cached.setCreatedAt(System.currentTimeMillis() - 1100);
+        user = fakeClient3.getRevalidatedUser("cdoe");
+        Assert.assertThat(user.getName(), IsEqual.equalTo("Carl Doe"));
+
+        final CachedResponse refreshed = cache.get("userCache:/user/revalidated/cdoe").get();
+        Assert.assertThat(refreshed.getTTL(), IsEqual.equalTo(300L));
+        Assert.assertThat(refreshed.isStale(), IsEqual.equalTo(false));
+        Assert.assertThat(refreshed.getCachedBytes(), IsEqual.equalTo(cached.getCachedBytes()));
+    }
+
+    @Test
+    public void testStaleWhileRevalidateUser() throws InterruptedException {
+        LOGGER.info("Starting testStaleWhileRevalidateUser");
+        FakeUser user = fakeClient3.getRevalidatedUser("ddoe");
+        Assert.assertThat(user.getName(), IsEqual.equalTo("Dana Doe"));
+
+        final CachedResponse cached = cache.get("userCache:/user/revalidated/ddoe").get();
+        Assert.assertThat(cached.getStaleWhileRevalidate(), IsEqual.equalTo(30L));
+
+        // Once stale the cached response is served and refreshed in the background
+        cached.setCreatedAt(System.currentTimeMillis() - 1100);
+        user = fakeClient3.getRevalidatedUser("ddoe");
+        Assert.assertThat(user.getName(), IsEqual.equalTo("Dana Doe"));
+
+        CachedResponse refreshed = cached;
+        for (int i = 0; i < 50 && refreshed.getCreatedAt() == cached.getCreatedAt(); i++) {
+            Thread.sleep(100);
+            refreshed = cache.get("userCache:/user/revalidated/ddoe").get();
+        }
+        Assert.assertThat(refreshed.isStale(), IsEqual.equalTo(false));
+    }
+
+    @Test
+    public void testStaleIfErrorWithoutValidator() {
+        LOGGER.info("Starting testStaleIfErrorWithoutValidator");
+        final Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("Cache-Control", Arrays.asList("public,max-age=60,stale-if-error=86400"));
+        final CachedResponse stale = CachedResponse.createResponse(200, headers,
+                "{\"name\":\"Stale Doe\"}".getBytes(StandardCharsets.UTF_8));
+        stale.setCreatedAt(System.currentTimeMillis() - 61000);
+        Assert.assertThat(stale.isStaleIfError(), IsEqual.equalTo(true));
+        cache.set("userCache:/user/bdoe", stale);
+
+        // Without a validator the stale response is a miss, stale-if-error only applies if the origin fails
+        Assert.assertThat(fakeClient3.getCachedUser("bdoe").getName(), IsEqual.equalTo("Bob Doe"));
+        Assert.assertThat(cache.get("userCache:/user/bdoe").get().isStale(), IsEqual.equalTo(false));
+    }
+
+    @Test
+    public void testVaryingUser() {
+        LOGGER.info("Starting testVaryingUser");
+        Assert.assertThat(fakeClient3.getLocalizedUser("edoe", "en").getName(), IsEqual.equalTo("Eddie Doe"));
+        Assert.assertThat(fakeClient3.getLocalizedUser("edoe", "fr").getName(), IsEqual.equalTo("Edouard Doe"));
+        Assert.assertThat(fakeClient3.getLocalizedUser("edoe", "en").getName(), IsEqual.equalTo("Eddie Doe"));
+
+        // Each language is cached under its own key
+        Assert.assertThat(cache.get("localizedUserCache:/user/localized/edoe;accept-language=en").isPresent(),
+                IsEqual.equalTo(true));
+        Assert.assertThat(cache.get("localizedUserCache:/user/localized/edoe;accept-language=fr").isPresent(),
+                IsEqual.equalTo(true));
+        Assert.assertThat(cache.get("localizedUserCache:/user/localized/edoe").isPresent(), IsEqual.equalTo(false));
+    }
+
+    @Test
+    public void testGetImmutableUser() {
+        LOGGER.info("Starting testGetImmutableUser");
+        final FakeUser user = fakeClient3.getImmutableUser("bdoe");
+        Assert.assertThat(user.getName(), IsEqual.equalTo("Bob Doe"));
+        Assert.assertThat(cache.get("immutableUserCache:/user/bdoe").get().getCachedBytes().length > 0,
+                IsEqual.equalTo(true));
+
+        // Hits share the object deserialized when the response was cached
+        Assert.assertThat(fakeClient3.getImmutableUser("bdoe"), IsSame.sameInstance(user));
+        Assert.assertThat(fakeClient3.getCachedUser("bdoe"), IsNot.not(IsSame.sameInstance(user)));
+
+        // Methods without @ImmutableResponse get their own object from the same cached response
+        Assert.assertThat(fakeClient3.getMutableUser("bdoe"), IsNot.not(IsSame.sameInstance(user)));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        LOGGER.info("Starting testBatch");
+        final GuavaRestCache batchCache = Mockito.spy(GuavaRestCache.newDefaultCache());
+        final FakeClient batchClient = RestAdapter.getNamedAdapter(
+                "sample-client", RestAdapterConfig.custom()
+                        .withMessageSerializer(new JacksonMessageSerializer())
+                        .withRestCache(batchCache).build()).create(FakeClient.class);
+        batchClient.getCachedUser("bdoe");
+
+        final RestBatch<FakeClient> batch = RestBatch.of(batchClient);
+        final CompletableFuture<FakeUser> cached = batch.add(client -> client.getCachedUser("bdoe"));
+        final CompletableFuture<FakeUser> cachedAgain = batch.add(client -> client.getCachedUser("bdoe"));
+        final CompletableFuture<FakeUser> uncached = batch.add(client -> client.getUser("jdoe"));
+        batch.execute();
+
+        Assert.assertThat(cached.get().getName(), IsEqual.equalTo("Bob Doe"));
+        Assert.assertThat(cachedAgain.get().getName(), IsEqual.equalTo("Bob Doe"));
+        Assert.assertThat(uncached.get().getName(), IsEqual.equalTo("John Doe"));
+
+        // The cached responses of the batch are looked up at once
+        Mockito.verify(batchCache, Mockito.times(1)).getAll(Matchers.anyCollectionOf(String.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchObservable() {
+        RestBatch.of(fakeClient3).add(client -> client.getUserListObservable(Arrays.asList("jdoe")));
+    }
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * Tests {@link CacheControl}
+ */
+public class CacheControlTest {
+
+    @Test
+    public void testParse() {
+        final CacheControl cacheControl = CacheControl.parse(
+                "no-transform, Public,MAX-AGE=300 ,s-maxage=\"900\", stale-while-revalidate=30,stale-if-error=600");
+
+        Assert.assertThat(cacheControl.getMaxAge(), IsEqual.equalTo(300L));
+        Assert.assertThat(cacheControl.getSMaxAge(), IsEqual.equalTo(900L));
+        Assert.assertThat(cacheControl.getStaleWhileRevalidate(), IsEqual.equalTo(30L));
+        Assert.assertThat(cacheControl.getStaleIfError(), IsEqual.equalTo(600L));
+        Assert.assertThat(cacheControl.isPublic(), IsEqual.equalTo(true));
+        Assert.assertThat(cacheControl.isNoStore(), IsEqual.equalTo(false));
+        Assert.assertThat(cacheControl.getTTL(), IsEqual.equalTo(300L));
+    }
+
+    @Test
+    public void testParseFlags() {
+        final CacheControl cacheControl = CacheControl.parse("private, no-cache=\"Set-Cookie, X-Token\", no-store");
+
+        Assert.assertThat(cacheControl.isPrivate(), IsEqual.equalTo(true));
+        Assert.assertThat(cacheControl.isNoCache(), IsEqual.equalTo(true));
+        Assert.assertThat(cacheControl.isNoStore(), IsEqual.equalTo(true));
+        Assert.assertThat(cacheControl.getMaxAge(), IsEqual.equalTo(CacheControl.ABSENT));
+        Assert.assertThat(cacheControl.getFreshnessLifetime(), IsEqual.equalTo(CacheControl.ABSENT));
+
+        // Directives are not matched on substrings
+        Assert.assertThat(CacheControl.parse("x-no-store, max-ages=5").isNoStore(), IsEqual.equalTo(false));
+        Assert.assertThat(CacheControl.parse("x-no-store, max-ages=5").getMaxAge(),
+                IsEqual.equalTo(CacheControl.ABSENT));
+        // An invalid max-age is stale
+        Assert.assertThat(CacheControl.parse("max-age=soon").getMaxAge(), IsEqual.equalTo(0L));
+    }
+
+    @Test
+    public void testHeaders() {
+        final Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("cache-control", Arrays.asList("public", "s-maxage=120"));
+        headers.put("AGE", Arrays.asList("20"));
+        headers.put("etag", Arrays.asList("\"v1\""));
+        headers.put("Last-Modified", Arrays.asList("Wed, 21 Oct 2015 07:28:00 GMT"));
+
+        final CacheControl cacheControl = CacheControl.of(headers);
+        Assert.assertThat(cacheControl.getFreshnessLifetime(), IsEqual.equalTo(120L));
+        Assert.assertThat(cacheControl.getAge(), IsEqual.equalTo(20L));
+        Assert.assertThat(cacheControl.getTTL(), IsEqual.equalTo(100L));
+        Assert.assertThat(cacheControl.getETag(), IsEqual.equalTo("\"v1\""));
+        Assert.assertThat(cacheControl.getLastModified(), IsEqual.equalTo("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    public void testExpires() {
+        final ZonedDateTime date = ZonedDateTime.of(2015, 10, 21, 7, 28, 0, 0, ZoneOffset.UTC);
+        final Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("Date", Arrays.asList(DateTimeFormatter.RFC_1123_DATE_TIME.format(date)));
+        headers.put("Expires", Arrays.asList(DateTimeFormatter.RFC_1123_DATE_TIME.format(date.plusMinutes(5))));
+
+        Assert.assertThat(CacheControl.of(headers).getTTL(), IsEqual.equalTo(300L));
+
+        // max-age takes precedence
+        headers.put("Cache-Control", Arrays.asList("max-age=60"));
+        Assert.assertThat(CacheControl.of(headers).getTTL(), IsEqual.equalTo(60L));
+
+        // An invalid Expires has already expired
+        headers.remove("Cache-Control");
+        headers.put("Expires", Arrays.asList("0"));
+        Assert.assertThat(CacheControl.of(headers).getFreshnessLifetime(), IsEqual.equalTo(0L));
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpStatus;
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * Tests {@link CachedResponseCodec}
+ */
+public class CachedResponseCodecTest {
+
+    private static Map<String, Collection<String>> newHeaders() {
+        final Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("Cache-Control", Arrays.asList("public,max-age=60,stale-if-error=600"));
+        headers.put("Content-Type", Arrays.asList("application/json"));
+        headers.put("ETag", Arrays.asList("\"v1\""));
+        headers.put("X-Request-Id", Arrays.asList("a", "b"));
+        headers.put("Set-Cookie", Arrays.asList("session=0a1bc2a7"));
+        headers.put("Transfer-Encoding", Arrays.asList("chunked"));
+        return headers;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final CachedResponse response = CachedResponse.createResponse(HttpStatus.SC_OK, newHeaders(),
+                "{ \"name\" : \"John Doe\" }".getBytes());
+
+        final byte[] encoded = CachedResponseCodec.encode(response);
+        final CachedResponse decoded = CachedResponseCodec.decode(encoded);
+
+        Assert.assertThat(decoded.getStatus(), IsEqual.equalTo(HttpStatus.SC_OK));
+        Assert.assertThat(decoded.getTTL(), IsEqual.equalTo(60L));
+        Assert.assertThat(decoded.getCreatedAt(), IsEqual.equalTo(response.getCreatedAt()));
+        Assert.assertThat(decoded.getStaleIfError(), IsEqual.equalTo(600L));
+        Assert.assertThat(decoded.getETag(), IsEqual.equalTo("\"v1\""));
+        Assert.assertThat(decoded.getLastModified(), IsEqual.equalTo(null));
+        Assert.assertThat(decoded.getCachedBytes(), IsEqual.equalTo(response.getCachedBytes()));
+
+        // Headers not needed to replay the response are dropped
+        final Map<String, Collection<String>> headers = newHeaders();
+        headers.remove("Set-Cookie");
+        headers.remove("Transfer-Encoding");
+        Assert.assertThat(decoded.getHeaders(), IsEqual.equalTo(headers));
+    }
+
+    @Test
+    public void testCompressedDirectBody() {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 200; i++) {
+            json.append("{ \"name\" : \"user").append(i).append("\" },");
+        }
+        final byte[] body = json.append("{}]").toString().getBytes();
+        final CachedResponse compressed = CachedResponse.createResponse(HttpStatus.SC_OK, newHeaders(), body, 1024);
+        final ByteBuffer directBody = ByteBuffer.allocateDirect(compressed.getStoredLength());
+        directBody.put(compressed.getStoredBytes()).flip();
+
+        final byte[] encoded = CachedResponseCodec.encode(compressed.withDirectBody(directBody));
+        Assert.assertThat(encoded.length < body.length, IsEqual.equalTo(true));
+
+        final ByteBuffer mapped = ByteBuffer.allocateDirect(encoded.length);
+        mapped.put(encoded).flip();
+        final CachedResponse decoded = CachedResponseCodec.decode(mapped);
+        Assert.assertThat(decoded.isCompressed(), IsEqual.equalTo(true));
+        Assert.assertThat(decoded.getCachedBytes(), IsEqual.equalTo(body));
+        Assert.assertThat(mapped.hasRemaining(), IsEqual.equalTo(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedVersion() {
+        final byte[] encoded = CachedResponseCodec.encode(new CachedResponse(HttpStatus.SC_OK, newHeaders(),
+                new byte[0]));
+        encoded[0] = CachedResponseCodec.VERSION + 1;
+        CachedResponseCodec.decode(encoded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        final byte[] encoded = CachedResponseCodec.encode(new CachedResponse(HttpStatus.SC_OK, newHeaders(),
+                "{}".getBytes()));
+        CachedResponseCodec.decode(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBodyLengthPastEnd() {
+        final byte[] encoded = CachedResponseCodec.encode(new CachedResponse(HttpStatus.SC_OK,
+                new HashMap<String, Collection<String>>(), new byte[0]));
+        // Replaces the body length of 0 with Integer.MAX_VALUE
+        final byte[] corrupt = Arrays.copyOf(encoded, encoded.length + 4);
+        System.arraycopy(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 }, 0,
+                corrupt, encoded.length - 1, 5);
+        CachedResponseCodec.decode(corrupt);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeHeaderCount() {
+        final byte[] encoded = CachedResponseCodec.encode(new CachedResponse(HttpStatus.SC_OK,
+                new HashMap<String, Collection<String>>(), new byte[0]));
+        // Replaces the header count of 0, and the body length, with -1
+        final byte[] corrupt = Arrays.copyOf(encoded, encoded.length + 3);
+        System.arraycopy(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F }, 0,
+                corrupt, encoded.length - 2, 5);
+        CachedResponseCodec.decode(corrupt);
+    }
+}
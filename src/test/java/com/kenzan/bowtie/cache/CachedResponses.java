@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpStatus;
+
+import com.google.common.collect.Lists;
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * Creates the cacheable responses of the {@link RestCache} tests
+ */
+final class CachedResponses {
+
+    private CachedResponses() {
+
+    }
+
+    /***
+     * @return headers of a public response fresh for maxAge seconds
+     */
+    static Map<String, Collection<String>> newHeaders(long maxAge) {
+        final Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("Cache-Control", Lists.newArrayList("public,max-age=" + maxAge));
+        return headers;
+    }
+
+    static CachedResponse newResponse(long maxAge, byte[] body) {
+        return new CachedResponse(HttpStatus.SC_OK, newHeaders(maxAge), body);
+    }
+
+    static CachedResponse newResponse(long maxAge, String body) {
+        return newResponse(maxAge, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static CachedResponse newResponse(long maxAge) {
+        return newResponse(maxAge, "{}");
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * Tests {@link DiskRestCache}
+ */
+public class DiskRestCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSurvivesRestart() throws IOException, InterruptedException {
+
+        final File directory = folder.newFolder();
+        try (final DiskRestCache cache = DiskRestCache.custom(directory).withSegmentSize(64 * 1024).build()) {
+            cache.set("userCache:/user/jdoe", CachedResponses.newResponse(60, "{ \"name\" : \"John Doe\" }"));
+            cache.set("userCache:/user/bdoe", CachedResponses.newResponse(60, "{ \"name\" : \"Bob\" }"));
+            cache.set("userCache:/user/bdoe", CachedResponses.newResponse(60, "{ \"name\" : \"Bob Doe\" }"));
+
+            final CachedResponse expired = CachedResponses.newResponse(1, "{}");
+            expired.setCreatedAt(System.currentTimeMillis() - 2000);
+            cache.set("userCache:/user/expired", expired);
+
+            Assert.assertThat(new String(cache.get("userCache:/user/jdoe").get().getCachedBytes()),
+                    IsEqual.equalTo("{ \"name\" : \"John Doe\" }"));
+            Assert.assertThat(cache.get("userCache:/user/expired").isPresent(), IsEqual.equalTo(false));
+        }
+
+        try (final DiskRestCache cache = DiskRestCache.custom(directory).withSegmentSize(64 * 1024).build()) {
+            Assert.assertThat(cache.awaitLoaded(5, TimeUnit.SECONDS), IsEqual.equalTo(true));
+            Assert.assertThat(cache.size(), IsEqual.equalTo(2));
+            final CachedResponse cached = cache.get("userCache:/user/bdoe").get();
+            Assert.assertThat(new String(cached.getCachedBytes()), IsEqual.equalTo("{ \"name\" : \"Bob Doe\" }"));
+            Assert.assertThat(cached.getTTL(), IsEqual.equalTo(60L));
+        }
+    }
+
+    @Test
+    public void testCorruptRecord() throws IOException, InterruptedException {
+
+        final File directory = folder.newFolder();
+        try (final DiskRestCache cache = DiskRestCache.custom(directory).withSegmentSize(64 * 1024).build()) {
+            cache.set("userCache:/user/jdoe", CachedResponses.newResponse(60, "{ \"name\" : \"John Doe\" }"));
+        }
+
+        try (final RandomAccessFile segment = new RandomAccessFile(new File(directory, "segment-0.dat"), "rw")) {
+            segment.seek(20);
+            segment.write(segment.read() ^ 0xFF);
+        }
+
+        try (final DiskRestCache cache = DiskRestCache.custom(directory).withSegmentSize(64 * 1024).build()) {
+            Assert.assertThat(cache.awaitLoaded(5, TimeUnit.SECONDS), IsEqual.equalTo(true));
+            Assert.assertThat(cache.get("userCache:/user/jdoe").isPresent(), IsEqual.equalTo(false));
+        }
+    }
+
+    @Test
+    public void testMaximumBytes() throws IOException {
+
+        final File directory = folder.newFolder();
+        final char[] body = new char[1000];
+        try (final DiskRestCache cache = DiskRestCache.custom(directory)
+                .withSegmentSize(4096)
+                .withMaximumBytes(4 * 4096)
+                .build()) {
+
+            for (int i = 0; i < 40; i++) {
+                cache.set("userCache:/user/" + i, CachedResponses.newResponse(60, new String(body)));
+            }
+            Assert.assertThat(cache.get("userCache:/user/0").isPresent(), IsEqual.equalTo(false));
+            Assert.assertThat(cache.get("userCache:/user/39").isPresent(), IsEqual.equalTo(true));
+            Assert.assertThat(directory.list().length <= 4, IsEqual.equalTo(true));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException, InterruptedException {
+
+        final File directory = folder.newFolder();
+        final char[] body = new char[1000];
+        try (final DiskRestCache cache = DiskRestCache.custom(directory)
+                .withSegmentSize(4096)
+                .withCompaction(1, 0.5)
+                .build()) {
+
+            // Overwrite the same two responses until several segments are mostly garbage
+            for (int i = 0; i < 20; i++) {
+                cache.set("userCache:/user/" + (i % 2), CachedResponses.newResponse(60, i + new String(body)));
+            }
+            final int segments = directory.list().length;
+
+            for (int i = 0; i < 30 && directory.list().length >= segments; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertThat(directory.list().length < segments, IsEqual.equalTo(true));
+            Assert.assertThat(new String(cache.get("userCache:/user/0").get().getCachedBytes()),
+                    IsEqual.equalTo(18 + new String(body)));
+            Assert.assertThat(new String(cache.get("userCache:/user/1").get().getCachedBytes()),
+                    IsEqual.equalTo(19 + new String(body)));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * Tests {@link GuavaRestCache}
+ */
+public class GuavaRestCacheTest {
+
+    @Test
+    public void testGroupBudgets() {
+
+        final GuavaRestCache cache = GuavaRestCache.custom()
+                .withMaximumWeight(100 * 1024)
+                .withGroupMaximumWeight("userCache", 10 * 1024)
+                .build();
+
+        cache.set("addressCache:/user/jdoe/address", CachedResponses.newResponse(60, new byte[1024]));
+        for (int i = 0; i < 100; i++) {
+            cache.set("userCache:/user/" + i, CachedResponses.newResponse(60, new byte[1024]));
+        }
+
+        // The user group evicts its own responses only
+        Assert.assertThat(cache.get("addressCache:/user/jdoe/address").isPresent(), IsEqual.equalTo(true));
+        Assert.assertThat(cache.get("userCache:/user/0").isPresent(), IsEqual.equalTo(false));
+        Assert.assertThat(cache.get("userCache:/user/99").isPresent(), IsEqual.equalTo(true));
+    }
+
+    @Test
+    public void testMaxAge() {
+
+        final GuavaRestCache cache = GuavaRestCache.custom().build();
+        final CachedResponse response = CachedResponses.newResponse(1, new byte[16]);
+        cache.set("userCache:/user/jdoe", response);
+        Assert.assertThat(cache.get("userCache:/user/jdoe").isPresent(), IsEqual.equalTo(true));
+
+        response.setCreatedAt(System.currentTimeMillis() - 2000);
+        Assert.assertThat(cache.get("userCache:/user/jdoe").isPresent(), IsEqual.equalTo(false));
+
+        // The default cache ignores the max-age
+        final GuavaRestCache defaultCache = GuavaRestCache.newDefaultCache();
+        defaultCache.set("userCache:/user/jdoe", response);
+        Assert.assertThat(defaultCache.get("userCache:/user/jdoe").isPresent(), IsEqual.equalTo(true));
+    }
+
+    @Test
+    public void testWeight() {
+
+        final CachedResponse response = CachedResponses.newResponse(60, new byte[1000]);
+        final int weight = GuavaRestCache.WEIGHER.weigh("userCache:/user/jdoe", response);
+        Assert.assertThat(weight > 1000 + "Cache-Control".length() + "public,max-age=60".length(),
+                IsEqual.equalTo(true));
+    }
+}
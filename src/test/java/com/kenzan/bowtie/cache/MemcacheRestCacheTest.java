@@ -104,6 +104,26 @@ public class MemcacheRestCacheTest {
 
     }
 
+    @Test
+    public void testGetAll() throws EVCacheException {
+
+        final EVCache evCache = Mockito.mock(EVCache.class);
+        final CachedResponse cachedResponse = new CachedResponse(HttpStatus.SC_OK, newHeaders(), FOO.getBytes());
+        final Map<String, CachedResponse> bulk = new HashMap<>();
+        bulk.put(FOO, cachedResponse);
+        bulk.put("bar", null);
+        Mockito.when(evCache.getBulk(Lists.newArrayList(FOO, "bar"), MemcacheRestCache.TRANSCODER)).thenReturn(bulk);
+
+        final MemcacheRestCache memcacheRestCache = new MemcacheRestCache(evCache);
+        final Map<String, CachedResponse> responses = memcacheRestCache.getAll(Lists.newArrayList(FOO, "bar"));
+
+        Assert.assertThat(responses.size(), IsEqual.equalTo(1));
+        Assert.assertThat(responses.get(FOO), IsEqual.equalTo(cachedResponse));
+        Mockito.verify(evCache, Mockito.times(1)).getBulk(Lists.newArrayList(FOO, "bar"), MemcacheRestCache.TRANSCODER);
+        Mockito.verify(evCache, Mockito.never()).get(Matchers.anyString(),
+                Matchers.<EVCacheTranscoder<CachedResponse>> any());
+    }
+
     @Test
     public void testSetException() throws EVCacheException {
 
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpStatus;
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * Tests {@link OffHeapRestCache}
+ */
+public class OffHeapRestCacheTest {
+
+    private static CachedResponse newResponse(byte[] body, int compressionThreshold) {
+        final Map<String, Collection<String>> headers = CachedResponses.newHeaders(60);
+        headers.put("ETag", Lists.newArrayList("\"v1\""));
+        return CachedResponse.createResponse(HttpStatus.SC_OK, headers, body, compressionThreshold);
+    }
+
+    @Test
+    public void testDirectBody() throws Exception {
+
+        final OffHeapRestCache cache = OffHeapRestCache.create(1024 * 1024);
+        final byte[] body = "{ \"name\" : \"John Doe\" }".getBytes();
+        cache.set("userCache:/user/jdoe", newResponse(body, 0));
+
+        Assert.assertThat(cache.isOffHeap("userCache:/user/jdoe"), IsEqual.equalTo(true));
+
+        // Hits get a copy of the body on the heap
+        final CachedResponse cached = cache.get("userCache:/user/jdoe").get();
+        Assert.assertThat(cached.isDirect(), IsEqual.equalTo(false));
+        Assert.assertThat(cached.getETag(), IsEqual.equalTo("\"v1\""));
+        Assert.assertThat(cached.getTTL(), IsEqual.equalTo(60L));
+        Assert.assertThat(cached.getStoredLength(), IsEqual.equalTo(body.length));
+
+        // Every read sees the whole body
+        Assert.assertThat(ByteStreams.toByteArray(cached.openBody()), IsEqual.equalTo(body));
+        Assert.assertThat(ByteStreams.toByteArray(cached.openBody()), IsEqual.equalTo(body));
+        Assert.assertThat(cached.getCachedBytes(), IsEqual.equalTo(body));
+        Assert.assertThat(cached.revalidated(new HashMap<>()).getCachedBytes(), IsEqual.equalTo(body));
+    }
+
+    @Test
+    public void testCompressedDirectBody() throws Exception {
+
+        final OffHeapRestCache cache = OffHeapRestCache.create(1024 * 1024);
+        final byte[] body = new byte[4096];
+        cache.set("userCache:/user/jdoe", newResponse(body, 1024));
+
+        final CachedResponse cached = cache.get("userCache:/user/jdoe").get();
+        Assert.assertThat(cached.isCompressed(), IsEqual.equalTo(true));
+        Assert.assertThat(cached.getStoredLength() < body.length, IsEqual.equalTo(true));
+        Assert.assertThat(ByteStreams.toByteArray(cached.openBody()), IsEqual.equalTo(body));
+    }
+
+    @Test
+    public void testReleasedChunksAreReused() {
+
+        final OffHeapRestCache cache = OffHeapRestCache.create(64 * 1024);
+        for (int i = 0; i < 64; i++) {
+            cache.set("userCache:/user/" + i, newResponse(new byte[4000], 0));
+            Assert.assertThat(cache.isOffHeap("userCache:/user/" + i), IsEqual.equalTo(true));
+        }
+
+        // A replaced response frees its chunk
+        cache.set("userCache:/user/63", newResponse(new byte[10], 0));
+        Assert.assertThat(cache.get("userCache:/user/63").get().getStoredLength(), IsEqual.equalTo(10));
+        Assert.assertThat(cache.get("userCache:/user/62").get().getStoredLength(), IsEqual.equalTo(4000));
+    }
+
+    @Test
+    public void testHitOutlivesChunk() throws Exception {
+
+        final OffHeapRestCache cache = OffHeapRestCache.create(64 * 1024);
+        final byte[] body = "{ \"name\" : \"John Doe\" }".getBytes();
+        cache.set("userCache:/user/jdoe", newResponse(body, 0));
+        final CachedResponse cached = cache.get("userCache:/user/jdoe").get();
+
+        // The replaced response's chunk is reused straight away by the next one of its size
+        cache.set("userCache:/user/jdoe", newResponse(new byte[body.length], 0));
+        cache.set("userCache:/user/bdoe", newResponse("{ \"name\" : \"Bob Doe\" }".getBytes(), 0));
+        Assert.assertThat(ByteStreams.toByteArray(cached.openBody()), IsEqual.equalTo(body));
+    }
+
+    @Test
+    public void testLargeBodyStaysOnHeap() {
+
+        final OffHeapRestCache cache = OffHeapRestCache.create(64 * 1024);
+        cache.set("userCache:/user/jdoe", newResponse(new byte[8192], 0));
+        Assert.assertThat(cache.isOffHeap("userCache:/user/jdoe"), IsEqual.equalTo(false));
+    }
+
+    @Test
+    public void testMaximumBytes() {
+
+        final OffHeapRestCache cache = OffHeapRestCache.create(64 * 1024);
+        for (int i = 0; i < 64; i++) {
+            cache.set("userCache:/user/" + i, newResponse(new byte[4096], 0));
+        }
+        Assert.assertThat(cache.get("userCache:/user/0").isPresent(), IsEqual.equalTo(false));
+        Assert.assertThat(cache.get("userCache:/user/63").isPresent(), IsEqual.equalTo(true));
+    }
+}
@@ -15,7 +15,9 @@
  */
 package com.kenzan.bowtie.cache;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 
 import org.apache.http.HttpStatus;
@@ -24,7 +26,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.netflix.client.http.HttpRequest;
+import com.netflix.client.http.HttpRequest.Verb;
 import com.netflix.client.http.HttpResponse;
 import com.netflix.niws.client.http.CachedResponse;
 
@@ -59,6 +63,11 @@ public class RestCachingPolicyTest {
                         .header("Cache-Control", "no-cache")
                         .build();
         Assert.assertThat(policy.isCachable(notCacheableRequest), IsEqual.equalTo(Boolean.FALSE));
+
+        Assert.assertThat(policy.isCachable(HttpRequest.newBuilder().uri("/url")
+                .header("cache-control", "max-age=0").build()), IsEqual.equalTo(Boolean.FALSE));
+        Assert.assertThat(policy.isCachable(HttpRequest.newBuilder().uri("/url").verb(Verb.POST).build()),
+                IsEqual.equalTo(Boolean.FALSE));
     }
 
     @Test
@@ -78,4 +87,49 @@ public class RestCachingPolicyTest {
         Assert.assertThat(policy.isCachable(cacheableResponse), IsEqual.equalTo(Boolean.TRUE));
     }
 
+    @Test
+    public void testVary() {
+
+        final HashMap<String, Collection<String>> headers = createCacheHeaders();
+        headers.put("Vary", Lists.newArrayList("Accept-Language, X-Tenant"));
+        final HttpResponse response = new CachedResponse(HttpStatus.SC_OK, headers, "foo".getBytes())
+                .toHttpResponse(null);
+
+        Assert.assertThat(policy.isCachable(response), IsEqual.equalTo(Boolean.TRUE));
+        Assert.assertThat(policy.getVary(response), IsEqual.equalTo(Sets.newTreeSet(Arrays.asList(
+                "accept-language", "x-tenant"))));
+
+        policy.recordVary("userCache", Arrays.asList("accept-language"));
+        policy.recordVary("userCache", policy.getVary(response));
+        Assert.assertThat(policy.getVaryHeaders("userCache"), IsEqual.equalTo(Sets.newTreeSet(Arrays.asList(
+                "accept-language", "x-tenant"))));
+        Assert.assertThat(policy.getVaryHeaders("addressCache").isEmpty(), IsEqual.equalTo(true));
+        Assert.assertThat(policy.isVaryKnown("addressCache"), IsEqual.equalTo(false));
+        policy.recordVary("addressCache", Collections.emptySet());
+        Assert.assertThat(policy.isVaryKnown("addressCache"), IsEqual.equalTo(true));
+        Assert.assertThat(policy.getVaryHeaders("addressCache").isEmpty(), IsEqual.equalTo(true));
+
+        headers.put("Vary", Lists.newArrayList("*"));
+        Assert.assertThat(policy.isCachable(new CachedResponse(HttpStatus.SC_OK, headers, "foo".getBytes())
+                .toHttpResponse(null)), IsEqual.equalTo(Boolean.FALSE));
+    }
+
+    @Test
+    public void testIsCachableHttpResponseMaxAge() {
+
+        final HashMap<String, Collection<String>> headers = new HashMap<>();
+        headers.put("Cache-Control", Lists.newArrayList("public, max-age=0"));
+        Assert.assertThat(policy.isCachable(new CachedResponse(HttpStatus.SC_OK, headers, "foo".getBytes())
+                .toHttpResponse(null)), IsEqual.equalTo(Boolean.FALSE));
+
+        headers.put("Cache-Control", Lists.newArrayList("public, max-age=60"));
+        headers.put("Age", Lists.newArrayList("60"));
+        Assert.assertThat(policy.isCachable(new CachedResponse(HttpStatus.SC_OK, headers, "foo".getBytes())
+                .toHttpResponse(null)), IsEqual.equalTo(Boolean.FALSE));
+
+        headers.put("Age", Lists.newArrayList("30"));
+        Assert.assertThat(policy.isCachable(new CachedResponse(HttpStatus.SC_OK, headers, "foo".getBytes())
+                .toHttpResponse(null)), IsEqual.equalTo(Boolean.TRUE));
+    }
+
 }
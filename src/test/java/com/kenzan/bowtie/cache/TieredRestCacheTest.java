@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.netflix.niws.client.http.CachedResponse;
+
+/***
+ * Tests {@link TieredRestCache}
+ */
+public class TieredRestCacheTest {
+
+    @Test
+    public void testWriteThrough() {
+
+        final RestCache remote = Mockito.mock(RestCache.class);
+        final TieredRestCache cache = TieredRestCache.custom(remote).build();
+        final CachedResponse response = CachedResponses.newResponse(60);
+
+        cache.set("foo", response);
+        Mockito.verify(remote).set("foo", response);
+
+        Assert.assertThat(cache.get("foo").get(), IsEqual.equalTo(response));
+        Mockito.verify(remote, Mockito.never()).get("foo");
+        Assert.assertThat(cache.isValueCaching(), IsEqual.equalTo(false));
+        Assert.assertThat(TieredRestCache.custom(remote).withValueCaching(true).build().isValueCaching(),
+                IsEqual.equalTo(true));
+    }
+
+    @Test
+    public void testPromoteRemoteHit() {
+
+        final RestCache remote = Mockito.mock(RestCache.class);
+        final CachedResponse response = CachedResponses.newResponse(60);
+        Mockito.when(remote.get("foo")).thenReturn(Optional.of(response));
+
+        final TieredRestCache cache = TieredRestCache.custom(remote).withJitter(0.5).build();
+        Assert.assertThat(cache.get("foo").get(), IsEqual.equalTo(response));
+        Assert.assertThat(cache.get("foo").get(), IsEqual.equalTo(response));
+        Mockito.verify(remote, Mockito.times(1)).get("foo");
+
+        Mockito.when(remote.get("bar")).thenReturn(Optional.empty());
+        Assert.assertThat(cache.get("bar").isPresent(), IsEqual.equalTo(false));
+    }
+
+    @Test
+    public void testStaleStaysRemote() {
+
+        final RestCache remote = Mockito.mock(RestCache.class);
+        final CachedResponse response = CachedResponses.newResponse(1);
+        response.setCreatedAt(System.currentTimeMillis() - 2000);
+        Mockito.when(remote.get("foo")).thenReturn(Optional.of(response));
+
+        final TieredRestCache cache = TieredRestCache.custom(remote).build();
+        cache.set("foo", response);
+        Assert.assertThat(cache.get("foo").get(), IsEqual.equalTo(response));
+        Assert.assertThat(cache.get("foo").get(), IsEqual.equalTo(response));
+        Mockito.verify(remote, Mockito.times(2)).get("foo");
+    }
+
+    @Test
+    public void testGetAll() {
+
+        final RestCache remote = Mockito.mock(RestCache.class);
+        final CachedResponse foo = CachedResponses.newResponse(60);
+        final CachedResponse bar = CachedResponses.newResponse(60);
+        Mockito.when(remote.getAll(Arrays.asList("bar", "baz"))).thenReturn(Collections.singletonMap("bar", bar));
+
+        final TieredRestCache cache = TieredRestCache.custom(remote).build();
+        cache.set("foo", foo);
+
+        final Map<String, CachedResponse> responses = cache.getAll(Arrays.asList("foo", "bar", "baz"));
+        Assert.assertThat(responses.size(), IsEqual.equalTo(2));
+        Assert.assertThat(responses.get("foo"), IsEqual.equalTo(foo));
+        Assert.assertThat(responses.get("bar"), IsEqual.equalTo(bar));
+
+        // Promoted to the near cache
+        Assert.assertThat(cache.get("bar").get(), IsEqual.equalTo(bar));
+        Mockito.verify(remote, Mockito.never()).get("bar");
+    }
+}
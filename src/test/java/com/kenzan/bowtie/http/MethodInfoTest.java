@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsNot;
+import org.hamcrest.core.IsNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.kenzan.bowtie.FakeClient;
+import com.kenzan.bowtie.RestAdapterConfig;
+import com.kenzan.bowtie.cache.CacheKeyStrategy;
+import com.kenzan.bowtie.cache.HashedCacheKeyStrategy;
+import com.kenzan.bowtie.cache.RawCacheKeyStrategy;
+import com.kenzan.bowtie.model.FakeUser;
+import com.kenzan.bowtie.serializer.JacksonMessageSerializer;
+import com.kenzan.bowtie.serializer.MessageSerializer;
+
+/***
+ * Tests the cache metadata of {@link MethodInfo}
+ */
+public class MethodInfoTest {
+
+    private static MethodInfo methodInfo(String name, Class<?>... parameterTypes) throws Exception {
+        return methodInfo(new RawCacheKeyStrategy(), name, parameterTypes);
+    }
+
+    private static MethodInfo methodInfo(CacheKeyStrategy cacheKeyStrategy, String name, Class<?>... parameterTypes)
+            throws Exception {
+        return new MethodInfo(FakeClient.class.getMethod(name, parameterTypes),
+                RestAdapterConfig.custom().withCacheKeyStrategy(cacheKeyStrategy).build());
+    }
+
+    @Test
+    public void testCacheKeyQueryParams() throws Exception {
+        final MethodInfo methodInfo = methodInfo("getUsers", String.class, Optional.class, String.class);
+
+        Assert.assertThat(methodInfo.getCacheKey(new Object[] { "j doe", Optional.of("sys"), "session" }),
+                IsEqual.equalTo(methodInfo.getCacheKey(new Object[] { "j doe", Optional.of("sys"), "other" })));
+        Assert.assertThat(methodInfo.getCacheKey(new Object[] { "j doe", Optional.of("sys"), "session" }),
+                IsEqual.equalTo("/user?bySystem=sys&byUsername=j+doe"));
+        Assert.assertThat(methodInfo.getCacheKey(new Object[] { "jdoe", Optional.empty(), "session" }),
+                IsEqual.equalTo("/user?byUsername=jdoe"));
+    }
+
+    @Test
+    public void testCollapserKey() throws Exception {
+        final Method method = FakeClient.class.getMethod("getCollapsedUser", String.class);
+        final MethodInfo methodInfo = new MethodInfo(method, RestAdapterConfig.createDefault());
+        final MethodInfo batchInfo = new MethodInfo(FakeClient.class.getMethod("getUserBatch", Collection.class),
+                RestAdapterConfig.createDefault());
+
+        // Every client of the interface shares a stable key, unless it is named
+        Assert.assertThat(new JerseyHystrixCollapser(methodInfo, batchInfo, null, new Object[] { "jdoe" })
+                .getCollapserKey().name(), IsEqual.equalTo("com.kenzan.bowtie.FakeClient.getCollapsedUser"));
+        Assert.assertThat(new JerseyHystrixObservableCollapser(methodInfo, batchInfo, null, new Object[] { "jdoe" })
+                .getCollapserKey().name(),
+                IsEqual.equalTo("com.kenzan.bowtie.FakeClient.getCollapsedUser.nonBlocking"));
+        Assert.assertThat(new JerseyHystrixCollapser(new MethodInfo(method, RestAdapterConfig.custom()
+                .withClientName("users").build()), batchInfo, null, new Object[] { "jdoe" }).getCollapserKey().name(),
+                IsEqual.equalTo("users.com.kenzan.bowtie.FakeClient.getCollapsedUser"));
+    }
+
+    @Test
+    public void testCacheKeyRepeatedParams() throws Exception {
+        final MethodInfo methodInfo = methodInfo("getUserList", Collection.class);
+
+        Assert.assertThat(methodInfo.getCacheKey(new Object[] { Arrays.asList("jdoe", "ddoe") }),
+                IsEqual.equalTo("/user/batch?username=jdoe&username=ddoe"));
+    }
+
+    @Test
+    public void testHashedCacheKey() throws Exception {
+        final MethodInfo methodInfo = methodInfo(new HashedCacheKeyStrategy(), "getUserList", Collection.class);
+
+        final String key = methodInfo.getCacheKey(new Object[] { Arrays.asList("jdoe", "ddoe") });
+        Assert.assertThat(key.length(), IsEqual.equalTo(22));
+        Assert.assertThat(methodInfo.getCacheKey(new Object[] { Arrays.asList("jdoe", "ddoe") }),
+                IsEqual.equalTo(key));
+        Assert.assertThat(methodInfo.getCacheKey(new Object[] { Arrays.asList("ddoe", "jdoe") }),
+                IsNot.not(IsEqual.equalTo(key)));
+
+        final String groupKey = methodInfo(new HashedCacheKeyStrategy(), "getCachedUser", String.class)
+                .getCacheKey(new Object[] { "jdoe" });
+        Assert.assertThat(groupKey.startsWith("userCache:"), IsEqual.equalTo(true));
+
+        // Without a configuration the keys are hashed too
+        Assert.assertThat(new MethodInfo(FakeClient.class.getMethod("getCachedUser", String.class), null)
+                .getCacheKey(new Object[] { "jdoe" }), IsEqual.equalTo(groupKey));
+    }
+
+    @Test
+    public void testCacheControl() throws Exception {
+        Assert.assertThat(methodInfo("getUserAddress", String.class, String.class)
+                .getCacheControl(new Object[] { "jdoe", "address" }), IsEqual.equalTo("no-cache"));
+        Assert.assertThat(methodInfo("getUsers", String.class, Optional.class, String.class)
+                .getCacheControl(new Object[] { "jdoe", Optional.empty(), "session" }), IsNull.nullValue());
+    }
+
+    @Test
+    public void testContentTypeWithBodyOnly() throws Exception {
+        final MethodInfo methodInfo = new MethodInfo(FakeClient.class.getMethod("emailUser", FakeUser.class),
+                RestAdapterConfig.custom().withMessageSerializer(new JacksonMessageSerializer()).build());
+
+        Assert.assertThat(methodInfo.toHttpRequest(new Object[] { new FakeUser() }).getHeaders().get("Content-Type"),
+                IsEqual.equalTo(Arrays.asList(JacksonMessageSerializer.CONTENT_TYPE)));
+        Assert.assertThat(methodInfo.toHttpRequest(new Object[] { null }).getHeaders().containsKey("Content-Type"),
+                IsEqual.equalTo(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBodySerializationFailure() throws Exception {
+        final MethodInfo methodInfo = new MethodInfo(FakeClient.class.getMethod("emailUser", FakeUser.class),
+                RestAdapterConfig.custom().withMessageSerializer(new MessageSerializer() {
+
+                    @Override
+                    public void writeValue(Object object, OutputStream outputStream) throws IOException {
+                        throw new IOException("Cannot write " + object);
+                    }
+
+                    @Override
+                    public Object readValue(Class<?> clazz, InputStream inputStream) {
+                        return null;
+                    }
+                }).build());
+
+        methodInfo.toHttpRequest(new Object[] { new FakeUser() });
+    }
+}
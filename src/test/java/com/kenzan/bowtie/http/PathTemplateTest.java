@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * Tests {@link PathTemplate}
+ */
+public class PathTemplateTest {
+
+    private static String render(String template, Object... values) {
+        final PathTemplate pathTemplate = PathTemplate.compile(template);
+        final int[] slots = new int[pathTemplate.getSlotCount()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = i;
+        }
+        return pathTemplate.render(values, slots, new StringBuilder()).toString();
+    }
+
+    private static String uriBuilder(String template, String[] names, Object... values) {
+        final Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            map.put(names[i], values[i]);
+        }
+        return UriBuilder.fromPath(template).buildFromEncodedMap(map).toString();
+    }
+
+    @Test
+    public void testRender() {
+        Assert.assertThat(render("/user/{username}", "jdoe"), IsEqual.equalTo("/user/jdoe"));
+        Assert.assertThat(render("/user/{field}/{username}", "address", "jdoe"),
+                IsEqual.equalTo("/user/address/jdoe"));
+        Assert.assertThat(render("/user/role"), IsEqual.equalTo("/user/role"));
+        Assert.assertThat(render("/user/{id: [0-9]+}", 42), IsEqual.equalTo("/user/42"));
+    }
+
+    @Test
+    public void testMatchesUriBuilder() {
+        final String template = "/user name/{first}/{last}.json";
+        final String[] names = PathTemplate.compile(template).getNames();
+
+        Assert.assertThat(render(template, "John Doe", "a%20b"),
+                IsEqual.equalTo(uriBuilder(template, names, "John Doe", "a%20b")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingValue() {
+        render("/user/{username}", (Object) null);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import rx.Observable;
+
+import com.kenzan.bowtie.FakeClient;
+import com.kenzan.bowtie.RestAdapterConfig;
+import com.kenzan.bowtie.cache.GuavaRestCache;
+import com.kenzan.bowtie.cache.RawCacheKeyStrategy;
+import com.kenzan.bowtie.model.FakeUser;
+import com.kenzan.bowtie.serializer.JacksonMessageSerializer;
+import com.netflix.client.http.HttpRequest;
+import com.netflix.client.http.HttpResponse;
+
+/***
+ * Tests {@link RequestExecutor}
+ */
+public class RequestExecutorTest {
+
+    @Test
+    public void testInvalidContentLength() throws Exception {
+
+        final GuavaRestCache cache = GuavaRestCache.newDefaultCache();
+        final RestAdapterConfig config = RestAdapterConfig.custom()
+                .withMessageSerializer(new JacksonMessageSerializer())
+                .withRestCache(cache)
+                .withCacheKeyStrategy(new RawCacheKeyStrategy()).build();
+        final MethodInfo methodInfo = new MethodInfo(FakeClient.class.getMethod("getCachedUser", String.class),
+                config);
+
+        final Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("Cache-Control", Arrays.asList("public,max-age=60"));
+        headers.put("Content-Length", Arrays.asList("twenty"));
+        final HttpResponse httpResponse = Mockito.mock(HttpResponse.class);
+        Mockito.when(httpResponse.getStatus()).thenReturn(200);
+        Mockito.when(httpResponse.getHeaders()).thenReturn(headers);
+        Mockito.when(httpResponse.getInputStream()).thenReturn(new ByteArrayInputStream(
+                "{\"name\":\"Bob Doe\"}".getBytes(StandardCharsets.UTF_8)));
+        final HttpTransport transport = Mockito.mock(HttpTransport.class);
+        Mockito.when(transport.execute(Matchers.any(HttpRequest.class))).thenReturn(Observable.just(httpResponse));
+
+        // The size is unknown, so the body is read and cached through the bounded tee
+        final FakeUser user = (FakeUser) new RequestExecutor(transport, config, null)
+                .execute(methodInfo, new Object[] { "bdoe" }).toBlocking().single();
+        Assert.assertThat(user.getName(), IsEqual.equalTo("Bob Doe"));
+        Assert.assertThat(cache.get("userCache:/user/bdoe").isPresent(), IsEqual.equalTo(true));
+    }
+}
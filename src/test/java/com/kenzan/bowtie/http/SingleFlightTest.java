@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsSame;
+import org.junit.Assert;
+import org.junit.Test;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+
+/***
+ * Tests {@link SingleFlight}
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testCoalesceConcurrentCalls() {
+
+        final SingleFlight singleFlight = new SingleFlight();
+        final AtomicInteger subscriptions = new AtomicInteger();
+        final PublishSubject<Object> response = PublishSubject.create();
+        final Observable<Object> call = response.doOnSubscribe(subscriptions::incrementAndGet);
+        final long coalesced = SingleFlight.getCoalescedCount();
+
+        final Object cached = new Object();
+        final Observable<Object> first = singleFlight.execute("userCache:/user/jdoe", call, Observable.never());
+        final Observable<Object> second = singleFlight.execute("userCache:/user/jdoe", call,
+                Observable.defer(() -> Observable.just(cached)));
+        Assert.assertThat(subscriptions.get(), IsEqual.equalTo(1));
+        Assert.assertThat(SingleFlight.getCoalescedCount(), IsEqual.equalTo(coalesced + 1));
+
+        final Object user = new Object();
+        response.onNext(user);
+        response.onCompleted();
+        Assert.assertThat(first.toBlocking().single(), IsEqual.equalTo(user));
+        // The waiting caller gets its own object from the follow up call
+        Assert.assertThat(second.toBlocking().single(), IsSame.sameInstance(cached));
+
+        // Completed calls are not shared with later callers
+        singleFlight.execute("userCache:/user/jdoe", Observable.just((Object) "again"), Observable.never());
+        Assert.assertThat(subscriptions.get(), IsEqual.equalTo(1));
+        Assert.assertThat(SingleFlight.getCoalescedCount(), IsEqual.equalTo(coalesced + 1));
+    }
+
+    @Test
+    public void testErrorIsShared() {
+
+        final SingleFlight singleFlight = new SingleFlight();
+        final PublishSubject<Object> response = PublishSubject.create();
+
+        final Observable<Object> first = singleFlight.execute("userCache:/user/jdoe", response, Observable.never());
+        final Observable<Object> second = singleFlight.execute("userCache:/user/jdoe", response,
+                Observable.just((Object) "cached"));
+        response.onError(new IllegalStateException("unavailable"));
+
+        Assert.assertThat(first.onErrorReturn(Throwable::getMessage).toBlocking().single(),
+                IsEqual.equalTo("unavailable"));
+        Assert.assertThat(second.onErrorReturn(Throwable::getMessage).toBlocking().single(),
+                IsEqual.equalTo("unavailable"));
+
+        final Observable<Object> retry = singleFlight.execute("userCache:/user/jdoe", Observable.just((Object) "jdoe"),
+                Observable.never());
+        Assert.assertThat(retry.toBlocking().single(), IsEqual.equalTo("jdoe"));
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+
+/***
+ * Tests {@link TeeInputStream}
+ */
+public class TeeInputStreamTest {
+
+    private static final byte[] BODY = "{ \"name\" : \"John Doe\" }\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testCopiesUnreadRemainderOnClose() throws IOException {
+        final TeeInputStream inputStream = new TeeInputStream(new ByteArrayInputStream(BODY), 1024);
+        try {
+            inputStream.read(new byte[4], 0, 4);
+            inputStream.close();
+            Assert.assertThat(inputStream.toByteArray(), IsEqual.equalTo(BODY));
+        } finally {
+            inputStream.release();
+        }
+    }
+
+    @Test
+    public void testSkipsCopyOverLimit() throws IOException {
+        final TeeInputStream inputStream = new TeeInputStream(new ByteArrayInputStream(BODY), 8);
+        try {
+            int count = 0;
+            while (inputStream.read() >= 0) {
+                count++;
+            }
+            Assert.assertThat(count, IsEqual.equalTo(BODY.length));
+            Assert.assertThat(inputStream.toByteArray(), IsEqual.equalTo(null));
+        } finally {
+            inputStream.release();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.google.common.reflect.TypeToken;
+import com.kenzan.bowtie.model.FakeUser;
+
+/***
+ * Tests {@link JacksonMessageSerializer} and the {@link MessageSerializer} compatibility defaults
+ */
+public class JacksonMessageSerializerTest {
+
+    @Test
+    public void testWriteAndReadSlice() throws Exception {
+        final MessageSerializer serializer = new JacksonMessageSerializer();
+        final FakeUser user = new FakeUser();
+        user.setName("John Doe");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        serializer.writeValue(user, out);
+        out.write(']');
+
+        final byte[] bytes = out.toByteArray();
+        Assert.assertThat(new String(bytes, StandardCharsets.UTF_8), IsEqual.equalTo("[{\"name\":\"John Doe\"}]"));
+        Assert.assertThat(((FakeUser) serializer.readValue(FakeUser.class, bytes, 1, bytes.length - 2)).getName(),
+                IsEqual.equalTo("John Doe"));
+    }
+
+    @Test
+    public void testReadGenericType() throws Exception {
+        final JacksonMessageSerializer serializer = new JacksonMessageSerializer();
+        final JavaType type = TypeFactory.defaultInstance().constructCollectionType(List.class, FakeUser.class);
+        serializer.prepare(type);
+
+        @SuppressWarnings("unchecked")
+        final List<FakeUser> users = (List<FakeUser>) serializer.readValue(type, new ByteArrayInputStream(
+                "[{\"name\":\"jdoe\"}]".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertThat(users.get(0).getName(), IsEqual.equalTo("jdoe"));
+    }
+
+    @Test
+    public void testStringForm() throws Exception {
+        final MessageSerializer serializer = new MessageSerializer() {
+
+            @Override
+            public void writeValue(Object object, OutputStream outputStream) throws IOException {
+                outputStream.write(object.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public Object readValue(Class<?> clazz, InputStream inputStream) {
+                return null;
+            }
+        };
+
+        Assert.assertThat(serializer.writeValue("\u00e9t\u00e9"), IsEqual.equalTo("\u00e9t\u00e9"));
+    }
+
+    @Test(expected = CharConversionException.class)
+    public void testBinaryHasNoStringForm() throws Exception {
+        final FakeUser user = new FakeUser();
+        user.setName("John Doe");
+        new CBORMessageSerializer().writeValue(user);
+    }
+
+    @Test
+    public void testReadRawClass() throws Exception {
+        final MessageSerializer serializer = new MessageSerializer() {
+
+            @Override
+            public void writeValue(Object object, OutputStream outputStream) {
+            }
+
+            @Override
+            public Object readValue(Class<?> clazz, InputStream inputStream) {
+                return clazz;
+            }
+        };
+
+        Assert.assertThat(serializer.readValue(new TypeToken<List<FakeUser>>() {}.getType(),
+                new ByteArrayInputStream(new byte[0])), IsEqual.equalTo((Object) List.class));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015 Kenzan (labs@kenzan.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.kenzan.bowtie.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsInstanceOf;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.reflect.TypeToken;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.kenzan.bowtie.model.FakeUser;
+
+/***
+ * Tests {@link NegotiatingMessageSerializer} and the binary serializers
+ */
+public class NegotiatingMessageSerializerTest {
+
+    private final NegotiatingMessageSerializer serializer = new NegotiatingMessageSerializer(Arrays.asList(
+            new SmileMessageSerializer(), new CBORMessageSerializer(), new JacksonMessageSerializer()));
+
+    @Test
+    public void testHeaders() {
+        Assert.assertThat(serializer.getContentType(), IsEqual.equalTo(SmileMessageSerializer.CONTENT_TYPE));
+        Assert.assertThat(serializer.getAccept(), IsEqual.equalTo(
+                "application/x-jackson-smile, application/cbor;q=0.9, application/json;q=0.8"));
+    }
+
+    @Test
+    public void testForContentType() throws Exception {
+        Assert.assertThat(serializer.forContentType("Application/JSON; charset=UTF-8"),
+                IsInstanceOf.instanceOf(JacksonMessageSerializer.class));
+        Assert.assertThat(serializer.forContentType(CBORMessageSerializer.CONTENT_TYPE),
+                IsInstanceOf.instanceOf(CBORMessageSerializer.class));
+        Assert.assertThat(serializer.forContentType(null),
+                IsInstanceOf.instanceOf(SmileMessageSerializer.class));
+
+        final FakeUser user = new FakeUser();
+        user.setName("John Doe");
+        for (String contentType : Arrays.asList(SmileMessageSerializer.CONTENT_TYPE,
+                CBORMessageSerializer.CONTENT_TYPE, JacksonMessageSerializer.CONTENT_TYPE)) {
+            final MessageSerializer format = serializer.forContentType(contentType);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            format.writeValue(user, out);
+            final FakeUser read = (FakeUser) format.readValue(FakeUser.class, new ByteArrayInputStream(out.toByteArray()));
+            Assert.assertThat(read.getName(), IsEqual.equalTo("John Doe"));
+        }
+    }
+
+    @Test
+    public void testProtobuf() throws Exception {
+        final ProtobufMessageSerializer protobuf = new ProtobufMessageSerializer();
+        final FileDescriptorProto first = FileDescriptorProto.newBuilder().setName("first.proto").build();
+        final FileDescriptorProto second = FileDescriptorProto.newBuilder().setName("second.proto").build();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        protobuf.writeValue(first, out);
+        Assert.assertThat(protobuf.readValue(FileDescriptorProto.class, new ByteArrayInputStream(out.toByteArray())),
+                IsEqual.equalTo(first));
+
+        out.reset();
+        first.writeDelimitedTo(out);
+        second.writeDelimitedTo(out);
+        final Iterator<Object> values = protobuf.readValues(FileDescriptorProto.class,
+                new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertThat(values.next(), IsEqual.equalTo(first));
+        Assert.assertThat(values.next(), IsEqual.equalTo(second));
+        Assert.assertThat(values.hasNext(), IsEqual.equalTo(false));
+
+        final Type type = new TypeToken<List<FileDescriptorProto>>() { }.getType();
+        protobuf.prepare(type);
+        Assert.assertThat(protobuf.readValue(type, new ByteArrayInputStream(out.toByteArray())),
+                IsEqual.equalTo(Arrays.asList(first, second)));
+    }
+}
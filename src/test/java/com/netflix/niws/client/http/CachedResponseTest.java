@@ -15,6 +15,8 @@
  */
 package com.netflix.niws.client.http;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -25,6 +27,8 @@ import org.hamcrest.core.IsEqual;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.io.ByteStreams;
+
 /***
  * Tests {@link CachedResponse}
  */
@@ -58,4 +62,85 @@ public class CachedResponseTest {
         Assert.assertThat(cachedResponse.getTTL(), IsEqual.equalTo(maxAge));
     }
 
+    @Test
+    public void testRevalidated() {
+
+        final Map<String, Collection<String>> headers = newHeaders(0);
+        headers.put("etag", Arrays.asList("\"v1\""));
+        headers.put("Last-Modified", Arrays.asList("Wed, 21 Oct 2015 07:28:00 GMT"));
+        headers.put("Content-Length", Arrays.asList("2"));
+
+        final CachedResponse cachedResponse = new CachedResponse(HttpStatus.SC_OK, headers, "{}".getBytes());
+        Assert.assertThat(cachedResponse.getETag(), IsEqual.equalTo("\"v1\""));
+        Assert.assertThat(cachedResponse.isRevalidatable(), IsEqual.equalTo(true));
+
+        final Map<String, Collection<String>> notModified = newHeaders(60);
+        notModified.put("ETag", Arrays.asList("\"v2\""));
+        notModified.put("content-length", Arrays.asList("0"));
+        notModified.put("Transfer-Encoding", Arrays.asList("chunked"));
+
+        final CachedResponse revalidated = cachedResponse.revalidated(notModified);
+        Assert.assertThat(revalidated.getHeaders().get("Content-Length"), IsEqual.equalTo(Arrays.asList("2")));
+        Assert.assertThat(revalidated.getHeaders().containsKey("content-length"), IsEqual.equalTo(false));
+        Assert.assertThat(revalidated.getHeaders().containsKey("Transfer-Encoding"), IsEqual.equalTo(false));
+        Assert.assertThat(revalidated.getTTL(), IsEqual.equalTo(60L));
+        Assert.assertThat(revalidated.getETag(), IsEqual.equalTo("\"v2\""));
+        Assert.assertThat(revalidated.getLastModified(), IsEqual.equalTo("Wed, 21 Oct 2015 07:28:00 GMT"));
+        Assert.assertThat(revalidated.getCachedBytes(), IsEqual.equalTo(cachedResponse.getCachedBytes()));
+        Assert.assertThat(revalidated.isStale(), IsEqual.equalTo(false));
+    }
+
+    @Test
+    public void testStaleDirectives() {
+
+        final Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("cache-control", Arrays.asList("public,max-age=0,stale-while-revalidate=30,stale-if-error=600"));
+
+        final CachedResponse cachedResponse = new CachedResponse(HttpStatus.SC_OK, headers, "{}".getBytes());
+        Assert.assertThat(cachedResponse.getStaleWhileRevalidate(), IsEqual.equalTo(30L));
+        Assert.assertThat(cachedResponse.getStaleIfError(), IsEqual.equalTo(600L));
+
+        cachedResponse.setTtl(1);
+        cachedResponse.setCreatedAt(System.currentTimeMillis() - 2000);
+        Assert.assertThat(cachedResponse.isStale(), IsEqual.equalTo(true));
+        Assert.assertThat(cachedResponse.isStaleWhileRevalidate(), IsEqual.equalTo(true));
+        Assert.assertThat(cachedResponse.isStaleIfError(), IsEqual.equalTo(true));
+
+        cachedResponse.setCreatedAt(System.currentTimeMillis() - 60000);
+        Assert.assertThat(cachedResponse.isStaleWhileRevalidate(), IsEqual.equalTo(false));
+        Assert.assertThat(cachedResponse.isStaleIfError(), IsEqual.equalTo(true));
+    }
+
+    @Test
+    public void testValue() {
+
+        final CachedResponse cachedResponse = new CachedResponse(HttpStatus.SC_OK, newHeaders(60), "{}".getBytes());
+        cachedResponse.setValue(String.class, "bar");
+
+        Assert.assertThat(cachedResponse.getValue(String.class), IsEqual.equalTo("bar"));
+        Assert.assertThat(cachedResponse.getValue(Integer.class), IsEqual.equalTo(null));
+        Assert.assertThat(cachedResponse.revalidated(new HashMap<>()).getValue(String.class), IsEqual.equalTo("bar"));
+    }
+
+    @Test
+    public void testCompression() throws IOException {
+
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 200; i++) {
+            json.append("{ \"name\" : \"user").append(i).append("\" },");
+        }
+        final byte[] body = json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+
+        final CachedResponse cachedResponse = CachedResponse.createResponse(HttpStatus.SC_OK, newHeaders(60), body, 1024);
+        Assert.assertThat(cachedResponse.isCompressed(), IsEqual.equalTo(true));
+        Assert.assertThat(cachedResponse.getStoredBytes().length < body.length / 4, IsEqual.equalTo(true));
+        Assert.assertThat(cachedResponse.getCachedBytes(), IsEqual.equalTo(body));
+        Assert.assertThat(ByteStreams.toByteArray(cachedResponse.openBody()), IsEqual.equalTo(body));
+        Assert.assertThat(cachedResponse.revalidated(new HashMap<>()).getCachedBytes(), IsEqual.equalTo(body));
+
+        final CachedResponse small = CachedResponse.createResponse(HttpStatus.SC_OK, newHeaders(60), "{}".getBytes(), 1024);
+        Assert.assertThat(small.isCompressed(), IsEqual.equalTo(false));
+        Assert.assertThat(small.getCachedBytes(), IsEqual.equalTo("{}".getBytes()));
+    }
+
 }